@@ -117,6 +117,17 @@ public class DynamicLayoutPerfTest {
         return builder;
     }
 
+    @Test
+    public void testCreate() {
+        final SpannableStringBuilder text = getText();
+        final TextPaint paint = new TextPaint();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            new DynamicLayout(text, paint, 1000, ALIGN_NORMAL, 0, 0, false);
+        }
+    }
+
     @Test
     public void testGetBlocksAlwaysNeedToBeRedrawn() {
         final SpannableStringBuilder text = getText();
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@LargeTest
+@RunWith(Parameterized.class)
+public class StaticLayoutPerfTest {
+
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "short", 1, 10 },
+            { "long", 10, 100 },
+        });
+    }
+
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz";
+    private static final int WIDTH = 500;
+
+    private final int mParagraphCount;
+    private final int mWordCount;
+    private final Random mRandom = new Random(1234567890);
+    private final TextPaint mPaint = new TextPaint();
+
+    public StaticLayoutPerfTest(String metricKey, int paragraphCount, int wordCount) {
+        mParagraphCount = paragraphCount;
+        mWordCount = wordCount;
+        mPaint.setTextSize(32);
+    }
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private String generateText() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mParagraphCount; i++) {
+            for (int j = 0; j < mWordCount; j++) {
+                final int wordLength = 1 + mRandom.nextInt(10);
+                for (int k = 0; k < wordLength; k++) {
+                    builder.append(ALPHABETS.charAt(mRandom.nextInt(ALPHABETS.length())));
+                }
+                builder.append(' ');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private StaticLayout createLayout(CharSequence text) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), mPaint, WIDTH).build();
+    }
+
+    @Test
+    public void testCreate_sameText() {
+        final String text = generateText();
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            createLayout(text);
+        }
+    }
+
+    @Test
+    public void testCreate_newText() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            final String text = generateText();
+            state.resumeTiming();
+
+            createLayout(text);
+        }
+    }
+
+    @Test
+    public void testCreate_spannedText() {
+        final SpannableStringBuilder text = new SpannableStringBuilder(generateText());
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            createLayout(text);
+        }
+    }
+}
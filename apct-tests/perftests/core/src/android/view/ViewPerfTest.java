@@ -23,6 +23,8 @@ import android.perftests.utils.PerfStatusReporter;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.LargeTest;
 import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import com.android.perftests.core.R;
 
@@ -55,4 +57,53 @@ public class ViewPerfTest {
             inflater.inflate(R.layout.twelve_key_entry, root, false);
         }
     }
+
+    @Test
+    public void testRequestLayout() {
+        runRequestLayout(false);
+    }
+
+    @Test
+    public void testRequestLayout_measureBoundary() {
+        runRequestLayout(true);
+    }
+
+    /**
+     * Requests a layout from a text deep inside rows of weighted linear layouts, then measures
+     * and lays out the hierarchy again.
+     */
+    private void runRequestLayout(boolean measureBoundary) {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final LinearLayout root = new LinearLayout(context);
+        root.setOrientation(LinearLayout.VERTICAL);
+        TextView leaf = null;
+        for (int i = 0; i < 10; i++) {
+            final LinearLayout row = new LinearLayout(context);
+            for (int j = 0; j < 4; j++) {
+                final FrameLayout cell = new FrameLayout(context);
+                cell.setMeasureBoundary(measureBoundary);
+                final TextView text = new TextView(context);
+                text.setText("Cell " + i + "," + j);
+                cell.addView(text);
+                row.addView(cell, new LinearLayout.LayoutParams(0, 100, 1));
+                leaf = text;
+            }
+            root.addView(row, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT, 0, 1));
+        }
+
+        final int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(1080,
+                View.MeasureSpec.EXACTLY);
+        final int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(1920,
+                View.MeasureSpec.EXACTLY);
+        root.measure(widthMeasureSpec, heightMeasureSpec);
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+
+        while (state.keepRunning()) {
+            leaf.requestLayout();
+            root.measure(widthMeasureSpec, heightMeasureSpec);
+            root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+        }
+    }
 }
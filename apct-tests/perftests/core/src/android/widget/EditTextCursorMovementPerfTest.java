@@ -17,11 +17,18 @@
 package android.widget;
 
 import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.perftests.utils.BenchmarkState;
 import android.perftests.utils.PerfStatusReporter;
 import android.perftests.utils.StubActivity;
 import android.text.Selection;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
 import android.view.KeyEvent;
 import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
@@ -62,6 +69,8 @@ public class EditTextCursorMovementPerfTest {
         });
     }
 
+    private static final int SPAN_COUNT = 50;
+
     private final String mMetricKey;
     private final String mText;
     private final int mCursorPos;
@@ -85,12 +94,35 @@ public class EditTextCursorMovementPerfTest {
 
     @Test
     public void testCursorMovement() {
+        runCursorMovement(mText);
+    }
+
+    /**
+     * Same as {@link #testCursorMovement}, with many overlapping spans of the types that are
+     * queried when measuring text.
+     */
+    @Test
+    public void testCursorMovement_styled() {
+        final SpannableStringBuilder text = new SpannableStringBuilder(mText);
+        final int length = text.length();
+        for (int i = 0; i < SPAN_COUNT; i++) {
+            text.setSpan(new ForegroundColorSpan(Color.RED), 0, length,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            text.setSpan(new BackgroundColorSpan(Color.BLUE), 0, length,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            text.setSpan(new StyleSpan(Typeface.BOLD), 0, length,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        runCursorMovement(text);
+    }
+
+    private void runCursorMovement(CharSequence text) {
         InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
             @Override
             public void run() {
                 EditText editText = new EditText(mActivityRule.getActivity());
 
-                editText.setText(mText, TextView.BufferType.EDITABLE);
+                editText.setText(text, TextView.BufferType.EDITABLE);
                 Selection.setSelection(editText.getText(), 0, 0);
 
                 // Layout it here since the cursor movement requires layout information but it
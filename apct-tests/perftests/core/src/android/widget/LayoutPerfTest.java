@@ -24,6 +24,7 @@ import android.perftests.utils.StubActivity;
 import android.support.test.annotation.UiThreadTest;
 import android.support.test.filters.LargeTest;
 import android.support.test.rule.ActivityTestRule;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
@@ -105,4 +106,19 @@ public class LayoutPerfTest {
             }
         });
     }
+
+    @Test
+    @UiThreadTest
+    public void testInflatePerf() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            Activity activity = mActivityRule.getActivity();
+            LayoutInflater inflater = activity.getLayoutInflater();
+            FrameLayout parent = new FrameLayout(activity);
+
+            BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            while (state.keepRunning()) {
+                inflater.inflate(mLayoutId, parent, false);
+            }
+        });
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import static android.view.View.MeasureSpec.EXACTLY;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.StubActivity;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.text.PrecomputedText;
+import android.view.View.MeasureSpec;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@LargeTest
+@RunWith(Parameterized.class)
+public class TextViewPrecomputedTextPerfTest {
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "10x1K", 10, 1000 },
+            { "100x100", 100, 100 },
+        });
+    }
+
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz ";
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 1000;
+
+    private final int mLines;
+    private final int mChars;
+    private final Random mRandom = new Random(1234567890);
+
+    public TextViewPrecomputedTextPerfTest(String metricKey, int lines, int chars) {
+        mLines = lines;
+        mChars = chars;
+    }
+
+    @Rule
+    public ActivityTestRule<StubActivity> mActivityRule = new ActivityTestRule(StubActivity.class);
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private String generateText() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < mLines; i++) {
+            for (int j = 0; j < mChars; j++) {
+                sb.append(ALPHABETS.charAt(mRandom.nextInt(ALPHABETS.length())));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void measureAndLayout(TextView textView) {
+        textView.measure(MeasureSpec.makeMeasureSpec(WIDTH, EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, EXACTLY));
+        textView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void testSetText() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            final TextView textView = new TextView(mActivityRule.getActivity());
+            final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            while (state.keepRunning()) {
+                state.pauseTiming();
+                final String text = generateText();
+                state.resumeTiming();
+
+                textView.setText(text);
+                measureAndLayout(textView);
+            }
+        });
+    }
+
+    @Test
+    public void testSetPrecomputedText() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            final TextView textView = new TextView(mActivityRule.getActivity());
+            final PrecomputedText.Params params = textView.getPrecomputedTextParams(
+                    WIDTH - textView.getCompoundPaddingLeft()
+                            - textView.getCompoundPaddingRight());
+            final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            while (state.keepRunning()) {
+                // This is the part that would run on a background thread.
+                state.pauseTiming();
+                final PrecomputedText text = PrecomputedText.create(generateText(), params);
+                state.resumeTiming();
+
+                textView.setPrecomputedText(text);
+                measureAndLayout(textView);
+            }
+        });
+    }
+}
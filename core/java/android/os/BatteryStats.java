@@ -1779,6 +1779,15 @@ public abstract class BatteryStats implements Parcelable {
 
     public abstract boolean startIteratingHistoryLocked();
 
+    /**
+     * Like {@link #startIteratingHistoryLocked()}, but allows the implementation to skip
+     * history that ends before {@code startTime}. Iteration may still return items from
+     * before that time.
+     */
+    public boolean startIteratingHistoryLocked(long startTime) {
+        return startIteratingHistoryLocked();
+    }
+
     public abstract int getHistoryStringPoolSize();
 
     public abstract int getHistoryStringPoolBytes();
@@ -5760,11 +5769,19 @@ public abstract class BatteryStats implements Parcelable {
     private void dumpHistoryLocked(PrintWriter pw, int flags, long histStart, boolean checkin) {
         final HistoryPrinter hprinter = new HistoryPrinter();
         final HistoryItem rec = new HistoryItem();
+        final ArrayMap<HistoryTag, Integer> inlineTags = checkin ? new ArrayMap<>() : null;
         long lastTime = -1;
         long baseTime = -1;
         boolean printed = false;
         HistoryEventTracker tracker = null;
         while (getNextHistoryLocked(rec)) {
+            if (checkin) {
+                poolInlineHistoryTag(pw, rec.wakelockTag, inlineTags);
+                poolInlineHistoryTag(pw, rec.wakeReasonTag, inlineTags);
+                if (rec.eventCode != HistoryItem.EVENT_NONE) {
+                    poolInlineHistoryTag(pw, rec.eventTag, inlineTags);
+                }
+            }
             lastTime = rec.time;
             if (baseTime < 0) {
                 baseTime = lastTime;
@@ -5841,6 +5858,42 @@ public abstract class BatteryStats implements Parcelable {
         }
     }
 
+    /**
+     * Tags recorded once the history tag pool was full are not in the pool, so checkin output
+     * can't refer to them by their pool index. Gives such a tag an index past the end of the
+     * pool instead, printing a string pool line for it the first time it is seen.
+     */
+    private void poolInlineHistoryTag(PrintWriter pw, HistoryTag tag,
+            ArrayMap<HistoryTag, Integer> inlineTags) {
+        if (tag == null || tag.poolIdx >= 0) {
+            return;
+        }
+        Integer index = inlineTags.get(tag);
+        if (index == null) {
+            index = getHistoryStringPoolSize() + inlineTags.size();
+            final HistoryTag key = new HistoryTag();
+            key.setTo(tag);
+            inlineTags.put(key, index);
+            printHistoryStringPoolLine(pw, index, tag.uid, tag.string);
+        }
+        tag.poolIdx = index;
+    }
+
+    private static void printHistoryStringPoolLine(PrintWriter pw, int index, int uid,
+            String str) {
+        pw.print(BATTERY_STATS_CHECKIN_VERSION); pw.print(',');
+        pw.print(HISTORY_STRING_POOL); pw.print(',');
+        pw.print(index);
+        pw.print(",");
+        pw.print(uid);
+        pw.print(",\"");
+        str = str.replace("\\", "\\\\");
+        str = str.replace("\"", "\\\"");
+        pw.print(str);
+        pw.print("\"");
+        pw.println();
+    }
+
     private void dumpDailyLevelStepSummary(PrintWriter pw, String prefix, String label,
             LevelStepTracker steps, StringBuilder tmpSb, int[] tmpOutInt) {
         if (steps == null) {
@@ -5903,7 +5956,7 @@ public abstract class BatteryStats implements Parcelable {
         if ((flags&DUMP_HISTORY_ONLY) != 0 || !filtering) {
             final long historyTotalSize = getHistoryTotalSize();
             final long historyUsedSize = getHistoryUsedSize();
-            if (startIteratingHistoryLocked()) {
+            if (startIteratingHistoryLocked(histStart)) {
                 try {
                     pw.print("Battery History (");
                     pw.print((100*historyUsedSize)/historyTotalSize);
@@ -6100,21 +6153,11 @@ public abstract class BatteryStats implements Parcelable {
                 (DUMP_HISTORY_ONLY|DUMP_CHARGED_ONLY|DUMP_DAILY_ONLY)) != 0;
 
         if ((flags&DUMP_INCLUDE_HISTORY) != 0 || (flags&DUMP_HISTORY_ONLY) != 0) {
-            if (startIteratingHistoryLocked()) {
+            if (startIteratingHistoryLocked(histStart)) {
                 try {
                     for (int i=0; i<getHistoryStringPoolSize(); i++) {
-                        pw.print(BATTERY_STATS_CHECKIN_VERSION); pw.print(',');
-                        pw.print(HISTORY_STRING_POOL); pw.print(',');
-                        pw.print(i);
-                        pw.print(",");
-                        pw.print(getHistoryTagPoolUid(i));
-                        pw.print(",\"");
-                        String str = getHistoryTagPoolString(i);
-                        str = str.replace("\\", "\\\\");
-                        str = str.replace("\"", "\\\"");
-                        pw.print(str);
-                        pw.print("\"");
-                        pw.println();
+                        printHistoryStringPoolLine(pw, i, getHistoryTagPoolUid(i),
+                                getHistoryTagPoolString(i));
                     }
                     dumpHistoryLocked(pw, flags, histStart, true);
                 } finally {
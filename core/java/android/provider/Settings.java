@@ -11766,6 +11766,16 @@ public final class Settings {
          */
         public static final String MAX_NOTIFICATION_ENQUEUE_RATE = "max_notification_enqueue_rate";
 
+        /**
+         * How long, in milliseconds, callbacks to a notification listener are held back so that
+         * successive updates of the same notification are delivered as one.
+         *
+         * Should be a long; 0 only collapses callbacks that are already waiting to be sent.
+         * @hide
+         */
+        public static final String NOTIFICATION_LISTENER_COALESCE_WINDOW_MS =
+                "notification_listener_coalesce_window_ms";
+
         /**
          * Displays toasts when an app posts a notification that does not specify a valid channel.
          *
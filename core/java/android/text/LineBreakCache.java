@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.LocaleList;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of the character widths and line breaks that {@link StaticLayout} computes
+ * for paragraphs of plain text, so that laying out the same text again with the same paint and
+ * widths, e.g. in a recycled list item, doesn't measure and break it again.
+ *
+ * The cache is bounded by the total length of the cached paragraphs.
+ */
+class LineBreakCache {
+    /** Longer paragraphs are not cached. */
+    static final int MAX_PARAGRAPH_LENGTH = 1024;
+
+    private static final int MAX_CACHED_CHARS = 32 * 1024;
+
+    private static final LruCache<Key, Entry> sCache =
+            new LruCache<Key, Entry>(MAX_CACHED_CHARS) {
+                @Override
+                protected int sizeOf(Key key, Entry entry) {
+                    return key.mText.length();
+                }
+            };
+
+    static Entry get(Key key) {
+        return sCache.get(key);
+    }
+
+    static void put(Key key, Entry entry) {
+        sCache.put(key, entry);
+    }
+
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    /**
+     * The text of a paragraph and everything that its measurement and line breaking depend on.
+     */
+    static final class Key {
+        final String mText;
+        private final float mTextSize;
+        private final float mTextScaleX;
+        private final float mTextSkewX;
+        private final float mLetterSpacing;
+        private final int mFlags;
+        private final int mHyphenEdit;
+        private final boolean mElegantTextHeight;
+        // The typeface itself rather than its native instance, which could be freed and reused
+        // for another typeface while the key is cached.
+        private final Typeface mTypeface;
+        private final LocaleList mLocales;
+        private final String mFontFeatureSettings;
+        private final String mFontVariationSettings;
+        private final TextDirectionHeuristic mTextDir;
+        private final int mFirstWidth;
+        private final int mFirstWidthLineCount;
+        private final int mRestWidth;
+        private final int mBreakStrategy;
+        private final int mHyphenationFrequency;
+        private final boolean mJustify;
+        private final int mHashCode;
+
+        Key(char[] chars, int length, Paint paint, TextDirectionHeuristic textDir,
+                int firstWidth, int firstWidthLineCount, int restWidth, int breakStrategy,
+                int hyphenationFrequency, boolean justify) {
+            mText = new String(chars, 0, length);
+            mTextSize = paint.getTextSize();
+            mTextScaleX = paint.getTextScaleX();
+            mTextSkewX = paint.getTextSkewX();
+            mLetterSpacing = paint.getLetterSpacing();
+            mFlags = paint.getFlags();
+            mHyphenEdit = paint.getHyphenEdit();
+            mElegantTextHeight = paint.isElegantTextHeight();
+            mTypeface = paint.getTypeface();
+            mLocales = paint.getTextLocales();
+            mFontFeatureSettings = paint.getFontFeatureSettings();
+            mFontVariationSettings = paint.getFontVariationSettings();
+            mTextDir = textDir;
+            mFirstWidth = firstWidth;
+            mFirstWidthLineCount = firstWidthLineCount;
+            mRestWidth = restWidth;
+            mBreakStrategy = breakStrategy;
+            mHyphenationFrequency = hyphenationFrequency;
+            mJustify = justify;
+
+            int hash = mText.hashCode();
+            hash = 31 * hash + Float.floatToIntBits(mTextSize);
+            hash = 31 * hash + Objects.hashCode(mTypeface);
+            hash = 31 * hash + mFirstWidth;
+            hash = 31 * hash + mRestWidth;
+            mHashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mHashCode == other.mHashCode
+                    && mTextSize == other.mTextSize
+                    && mTextScaleX == other.mTextScaleX
+                    && mTextSkewX == other.mTextSkewX
+                    && mLetterSpacing == other.mLetterSpacing
+                    && mFlags == other.mFlags
+                    && mHyphenEdit == other.mHyphenEdit
+                    && mElegantTextHeight == other.mElegantTextHeight
+                    && mTextDir == other.mTextDir
+                    && mFirstWidth == other.mFirstWidth
+                    && mFirstWidthLineCount == other.mFirstWidthLineCount
+                    && mRestWidth == other.mRestWidth
+                    && mBreakStrategy == other.mBreakStrategy
+                    && mHyphenationFrequency == other.mHyphenationFrequency
+                    && mJustify == other.mJustify
+                    && Objects.equals(mTypeface, other.mTypeface)
+                    && Objects.equals(mLocales, other.mLocales)
+                    && Objects.equals(mFontFeatureSettings, other.mFontFeatureSettings)
+                    && Objects.equals(mFontVariationSettings, other.mFontVariationSettings)
+                    && mText.equals(other.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * The measurement and line breaking results of a paragraph.
+     */
+    static final class Entry {
+        final float[] mWidths;
+        final int mFmTop;
+        final int mFmBottom;
+        final int mFmAscent;
+        final int mFmDescent;
+        private final int[] mBreaks;
+        private final float[] mLineWidths;
+        private final int[] mLineFlags;
+
+        Entry(float[] widths, int length, Paint.FontMetricsInt fm,
+                StaticLayout.LineBreaks lineBreaks, int breakCount) {
+            mWidths = Arrays.copyOf(widths, length);
+            mFmTop = fm.top;
+            mFmBottom = fm.bottom;
+            mFmAscent = fm.ascent;
+            mFmDescent = fm.descent;
+            mBreaks = Arrays.copyOf(lineBreaks.breaks, breakCount);
+            mLineWidths = Arrays.copyOf(lineBreaks.widths, breakCount);
+            mLineFlags = Arrays.copyOf(lineBreaks.flags, breakCount);
+        }
+
+        /**
+         * Copies the line breaks into {@code lineBreaks}, which the caller may modify.
+         *
+         * @return the number of breaks
+         */
+        int copyBreaksTo(StaticLayout.LineBreaks lineBreaks) {
+            final int breakCount = mBreaks.length;
+            if (lineBreaks.breaks.length < breakCount) {
+                lineBreaks.breaks = new int[breakCount];
+                lineBreaks.widths = new float[breakCount];
+                lineBreaks.flags = new int[breakCount];
+            }
+            System.arraycopy(mBreaks, 0, lineBreaks.breaks, 0, breakCount);
+            System.arraycopy(mLineWidths, 0, lineBreaks.widths, 0, breakCount);
+            System.arraycopy(mLineFlags, 0, lineBreaks.flags, 0, breakCount);
+            return breakCount;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Objects;
+
+/**
+ * Text together with its {@link StaticLayout}, computed ahead of time.
+ *
+ * Measuring and breaking text into lines is the expensive part of setting the text of a
+ * {@link android.widget.TextView}. The layout parameters can be captured on the UI thread with
+ * {@link android.widget.TextView#getPrecomputedTextParams}, the text laid out on any thread with
+ * {@link #create}, and the result handed to
+ * {@link android.widget.TextView#setPrecomputedText}, which uses the layout as long as the
+ * parameters still match those of the view.
+ *
+ * @hide
+ */
+public class PrecomputedText {
+    private final CharSequence mText;
+    private final Params mParams;
+    @GuardedBy("this")
+    private StaticLayout mLayout;
+
+    /**
+     * Everything except the text that a {@link StaticLayout} built by a TextView depends on.
+     */
+    public static final class Params {
+        final TextPaint mPaint;
+        final int mWidth;
+        final Layout.Alignment mAlignment;
+        final TextDirectionHeuristic mTextDir;
+        final float mSpacingAdd;
+        final float mSpacingMult;
+        final boolean mIncludePad;
+        final int mBreakStrategy;
+        final int mHyphenationFrequency;
+        final int mJustificationMode;
+
+        /**
+         * @param paint copied, so it may be changed after this call
+         */
+        public Params(@NonNull TextPaint paint, int width, @NonNull Layout.Alignment alignment,
+                @NonNull TextDirectionHeuristic textDir, float spacingAdd, float spacingMult,
+                boolean includePad, int breakStrategy, int hyphenationFrequency,
+                int justificationMode) {
+            mPaint = new TextPaint(paint);
+            mWidth = width;
+            mAlignment = alignment;
+            mTextDir = textDir;
+            mSpacingAdd = spacingAdd;
+            mSpacingMult = spacingMult;
+            mIncludePad = includePad;
+            mBreakStrategy = breakStrategy;
+            mHyphenationFrequency = hyphenationFrequency;
+            mJustificationMode = justificationMode;
+        }
+
+        /**
+         * @return true if a layout built with these parameters is the same as one built with
+         *         the given ones.
+         */
+        public boolean matches(@NonNull TextPaint paint, int width,
+                @NonNull Layout.Alignment alignment, @NonNull TextDirectionHeuristic textDir,
+                float spacingAdd, float spacingMult, boolean includePad, int breakStrategy,
+                int hyphenationFrequency, int justificationMode) {
+            return mWidth == width
+                    && mAlignment == alignment
+                    && mTextDir == textDir
+                    && mSpacingAdd == spacingAdd
+                    && mSpacingMult == spacingMult
+                    && mIncludePad == includePad
+                    && mBreakStrategy == breakStrategy
+                    && mHyphenationFrequency == hyphenationFrequency
+                    && mJustificationMode == justificationMode
+                    && paintMatches(paint);
+        }
+
+        private boolean paintMatches(TextPaint paint) {
+            final TextPaint p = mPaint;
+            return p.getTextSize() == paint.getTextSize()
+                    && p.getTextScaleX() == paint.getTextScaleX()
+                    && p.getTextSkewX() == paint.getTextSkewX()
+                    && p.getLetterSpacing() == paint.getLetterSpacing()
+                    && p.getFlags() == paint.getFlags()
+                    && p.getHyphenEdit() == paint.getHyphenEdit()
+                    && p.isElegantTextHeight() == paint.isElegantTextHeight()
+                    && p.getTypeface() == paint.getTypeface()
+                    && Objects.equals(p.getTextLocales(), paint.getTextLocales())
+                    && Objects.equals(p.getFontFeatureSettings(), paint.getFontFeatureSettings())
+                    && Objects.equals(p.getFontVariationSettings(),
+                            paint.getFontVariationSettings());
+        }
+    }
+
+    private PrecomputedText(CharSequence text, Params params, StaticLayout layout) {
+        mText = text;
+        mParams = params;
+        mLayout = layout;
+    }
+
+    /**
+     * Lays out {@code text}. Can be called from any thread, also concurrently with the same
+     * {@code params}: each call lays out the text with its own copy of the paint, since layout
+     * may change the state of the paint it is given.
+     *
+     * @param text must not be changed afterwards
+     */
+    public static PrecomputedText create(@NonNull CharSequence text, @NonNull Params params) {
+        // TextView keeps String and SpannedString instances as they are, which lets it tell
+        // that its text is still the precomputed one.
+        final CharSequence immutableText = TextUtils.stringOrSpannedString(text);
+        final StaticLayout layout = StaticLayout.Builder.obtain(immutableText, 0,
+                immutableText.length(), new TextPaint(params.mPaint), params.mWidth)
+                .setAlignment(params.mAlignment)
+                .setTextDirection(params.mTextDir)
+                .setLineSpacing(params.mSpacingAdd, params.mSpacingMult)
+                .setIncludePad(params.mIncludePad)
+                .setBreakStrategy(params.mBreakStrategy)
+                .setHyphenationFrequency(params.mHyphenationFrequency)
+                .setJustificationMode(params.mJustificationMode)
+                .build();
+        return new PrecomputedText(immutableText, params, layout);
+    }
+
+    public @NonNull CharSequence getText() {
+        return mText;
+    }
+
+    public @NonNull Params getParams() {
+        return mParams;
+    }
+
+    /**
+     * Hands the layout over to a view. A layout draws with the paint it was built with, so it is
+     * switched to {@code paint}, which must match the paint of the parameters, and can only be
+     * handed over once.
+     *
+     * @return the layout, or null if it was already taken
+     */
+    public synchronized StaticLayout takeLayout(@NonNull TextPaint paint) {
+        final StaticLayout layout = mLayout;
+        if (layout != null) {
+            mLayout = null;
+            layout.replaceWith(mText, paint, mParams.mWidth, mParams.mAlignment,
+                    mParams.mSpacingMult, mParams.mSpacingAdd);
+        }
+        return layout;
+    }
+}
@@ -42,11 +42,35 @@ public class SpanSet<E> {
         numberOfSpans = 0;
     }
 
-    @SuppressWarnings("unchecked")
     public void init(Spanned spanned, int start, int limit) {
-        final E[] allSpans = spanned.getSpans(start, limit, classType);
-        final int length = allSpans.length;
+        int prevNumberOfSpans = numberOfSpans;
+        numberOfSpans = 0;
+        if (spanned.getClass() == SpannableStringBuilder.class) {
+            // Avoids allocating the result array and looking up every span again.
+            ((SpannableStringBuilder) spanned).getSpans(start, limit, classType, this);
+        } else {
+            final E[] allSpans = spanned.getSpans(start, limit, classType);
+            final int length = allSpans.length;
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                final E span = allSpans[i];
+                add(span, spanned.getSpanStart(span), spanned.getSpanEnd(span),
+                        spanned.getSpanFlags(span));
+            }
+        }
+
+        // cleanup extra spans left over from previous init() call
+        if (numberOfSpans < prevNumberOfSpans) {
+            // prevNumberofSpans was > 0, therefore spans != null
+            Arrays.fill(spans, numberOfSpans, prevNumberOfSpans, null);
+        }
+    }
 
+    /**
+     * Makes room for {@code length} spans, discarding the current ones.
+     */
+    @SuppressWarnings("unchecked")
+    void ensureCapacity(int length) {
         if (length > 0 && (spans == null || spans.length < length)) {
             // These arrays may end up being too large because of the discarded empty spans
             spans = (E[]) Array.newInstance(classType, length);
@@ -54,31 +78,20 @@ public class SpanSet<E> {
             spanEnds = new int[length];
             spanFlags = new int[length];
         }
+    }
 
-        int prevNumberOfSpans = numberOfSpans;
-        numberOfSpans = 0;
-        for (int i = 0; i < length; i++) {
-            final E span = allSpans[i];
-
-            final int spanStart = spanned.getSpanStart(span);
-            final int spanEnd = spanned.getSpanEnd(span);
-            if (spanStart == spanEnd) continue;
-
-            final int spanFlag = spanned.getSpanFlags(span);
-
-            spans[numberOfSpans] = span;
-            spanStarts[numberOfSpans] = spanStart;
-            spanEnds[numberOfSpans] = spanEnd;
-            spanFlags[numberOfSpans] = spanFlag;
+    /**
+     * Appends a span, unless it is empty. There must be room for it.
+     */
+    void add(E span, int spanStart, int spanEnd, int spanFlag) {
+        if (spanStart == spanEnd) return;
 
-            numberOfSpans++;
-        }
+        spans[numberOfSpans] = span;
+        spanStarts[numberOfSpans] = spanStart;
+        spanEnds[numberOfSpans] = spanEnd;
+        spanFlags[numberOfSpans] = spanFlag;
 
-        // cleanup extra spans left over from previous init() call
-        if (numberOfSpans < prevNumberOfSpans) {
-            // prevNumberofSpans was > 0, therefore spans != null
-            Arrays.fill(spans, numberOfSpans, prevNumberOfSpans, null);
-        }
+        numberOfSpans++;
     }
 
     /**
@@ -981,6 +981,73 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
         return count;
     }
 
+    /**
+     * Fills {@code set} with the non-empty spans of type {@code kind} that overlap the range, in
+     * the order of {@link #getSpans(int, int, Class)}. The ranges and flags are read from the tree
+     * along with the spans instead of being looked up span by span, and nothing is allocated once
+     * the arrays of the set are large enough.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void getSpans(int queryStart, int queryEnd, Class<? extends T> kind, SpanSet<T> set) {
+        if (mSpanCount == 0) return;
+        final int count = countSpans(queryStart, queryEnd, kind, treeRoot());
+        if (count == 0) return;
+
+        final int[] indices = obtain(count);
+        getSpanIndicesRec(queryStart, queryEnd, kind, treeRoot(), indices, 0);
+        sortIndices(indices, count);
+        set.ensureCapacity(count);
+        for (int j = 0; j < count; j++) {
+            final int i = indices[j];
+            set.add((T) mSpans[i], resolveGap(mSpanStarts[i]), resolveGap(mSpanEnds[i]),
+                    mSpanFlags[i]);
+        }
+        recycle(indices);
+    }
+
+    /**
+     * Like {@link #getSpansRec}, but fills {@code indices} with the indices of the tree nodes of
+     * the spans found, in tree order.
+     *
+     * @return The total number of spans found.
+     */
+    private int getSpanIndicesRec(int queryStart, int queryEnd, Class kind, int i,
+            int[] indices, int count) {
+        if ((i & 1) != 0) {
+            // internal tree node
+            int left = leftChild(i);
+            int spanMax = mSpanMax[left];
+            if (spanMax > mGapStart) {
+                spanMax -= mGapLength;
+            }
+            if (spanMax >= queryStart) {
+                count = getSpanIndicesRec(queryStart, queryEnd, kind, left, indices, count);
+            }
+        }
+        if (i >= mSpanCount) return count;
+        int spanStart = mSpanStarts[i];
+        if (spanStart > mGapStart) {
+            spanStart -= mGapLength;
+        }
+        if (spanStart <= queryEnd) {
+            int spanEnd = mSpanEnds[i];
+            if (spanEnd > mGapStart) {
+                spanEnd -= mGapLength;
+            }
+            if (spanEnd >= queryStart &&
+                    (spanStart == spanEnd || queryStart == queryEnd ||
+                        (spanStart != queryEnd && spanEnd != queryStart)) &&
+                        (Object.class == kind || kind.isInstance(mSpans[i]))) {
+                indices[count++] = i;
+            }
+            if ((i & 1) != 0) {
+                count = getSpanIndicesRec(queryStart, queryEnd, kind, rightChild(i), indices,
+                        count);
+            }
+        }
+        return count;
+    }
+
     /**
      * Obtain a temporary sort buffer.
      *
@@ -1117,6 +1184,58 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
         }
     }
 
+    /**
+     * Heap sorts the first {@code size} tree node indices of {@code indices} in the order of
+     * {@link #sort}, reading the priorities and insertion orders from the tree.
+     */
+    private void sortIndices(int[] indices, int size) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDownIndex(i, indices, size);
+        }
+
+        for (int i = size - 1; i > 0; i--) {
+            final int tmp = indices[0];
+            indices[0] = indices[i];
+            indices[i] = tmp;
+
+            siftDownIndex(0, indices, i);
+        }
+    }
+
+    /**
+     * Helper function for {@link #sortIndices}.
+     */
+    private void siftDownIndex(int index, int[] indices, int size) {
+        int left = 2 * index + 1;
+        while (left < size) {
+            if (left < size - 1 && compareSpanIndices(indices[left], indices[left + 1]) < 0) {
+                left++;
+            }
+            if (compareSpanIndices(indices[index], indices[left]) >= 0) {
+                break;
+            }
+
+            final int tmp = indices[index];
+            indices[index] = indices[left];
+            indices[left] = tmp;
+
+            index = left;
+            left = 2 * index + 1;
+        }
+    }
+
+    /**
+     * Like {@link #compareSpans}, for two tree node indices.
+     */
+    private int compareSpanIndices(int left, int right) {
+        int priority1 = mSpanFlags[left] & SPAN_PRIORITY;
+        int priority2 = mSpanFlags[right] & SPAN_PRIORITY;
+        if (priority1 == priority2) {
+            return Integer.compare(mSpanOrder[left], mSpanOrder[right]);
+        }
+        return Integer.compare(priority2, priority1);
+    }
+
     /**
      * Compare two span elements in an array. Comparison is based first on the priority flag of
      * the span, and then the insertion order of the span.
@@ -177,6 +177,12 @@ public final class Choreographer {
      */
     FrameInfo mFrameInfo = new FrameInfo();
 
+    /**
+     * Records where the time of each frame goes, or null. Read by views, and by
+     * {@link FrameMetricsObserver} on other threads.
+     */
+    volatile FrameAttributionRecorder mFrameAttributionRecorder;
+
     /**
      * Must be kept in sync with CALLBACK_* ints below, used to index into this array.
      * @hide
@@ -344,6 +350,28 @@ public final class Choreographer {
         return mFrameIntervalNanos;
     }
 
+    /**
+     * Starts or stops recording a {@link FrameAttribution} for every frame, which is then
+     * available from the {@link FrameMetrics} of the frame through
+     * {@link FrameMetrics#getFrameAttribution()}. Recording the time of every callback type is
+     * cheap, timing views is not, and is only done every {@code viewSamplingInterval} frames.
+     *
+     * @param viewSamplingInterval Every how many frames to also record the views that took the
+     *                             most time, or 0 to never record views.
+     * @hide
+     */
+    public void setFrameAttributionEnabled(boolean enabled, int viewSamplingInterval) {
+        if (viewSamplingInterval < 0) {
+            throw new IllegalArgumentException("viewSamplingInterval must be positive or 0");
+        }
+        final FrameAttributionRecorder oldRecorder = mFrameAttributionRecorder;
+        mFrameAttributionRecorder = enabled
+                ? new FrameAttributionRecorder(viewSamplingInterval) : null;
+        if (oldRecorder != null) {
+            oldRecorder.clear();
+        }
+    }
+
     void dump(String prefix, PrintWriter writer) {
         String innerPrefix = prefix + "  ";
         writer.print(prefix); writer.println("Choreographer:");
@@ -599,6 +627,7 @@ public final class Choreographer {
 
     void doFrame(long frameTimeNanos, int frame) {
         final long startNanos;
+        final long intendedFrameTimeNanos = frameTimeNanos;
         synchronized (mLock) {
             if (!mFrameScheduled) {
                 return; // no work to do
@@ -610,7 +639,6 @@ public final class Choreographer {
                         + ((frameTimeNanos - mLastFrameTimeNanos) * 0.000001f) + " ms");
             }
 
-            long intendedFrameTimeNanos = frameTimeNanos;
             startNanos = System.nanoTime();
             final long jitterNanos = startNanos - frameTimeNanos;
             if (jitterNanos >= mFrameIntervalNanos) {
@@ -644,6 +672,11 @@ public final class Choreographer {
             mLastFrameTimeNanos = frameTimeNanos;
         }
 
+        final FrameAttributionRecorder attributionRecorder = mFrameAttributionRecorder;
+        if (attributionRecorder != null) {
+            attributionRecorder.beginFrame(intendedFrameTimeNanos);
+        }
+
         try {
             Trace.traceBegin(Trace.TRACE_TAG_VIEW, "Choreographer#doFrame");
             AnimationUtils.lockAnimationClock(frameTimeNanos / TimeUtils.NANOS_PER_MS);
@@ -661,6 +694,9 @@ public final class Choreographer {
         } finally {
             AnimationUtils.unlockAnimationClock();
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
+            if (attributionRecorder != null) {
+                attributionRecorder.endFrame();
+            }
         }
 
         if (DEBUG_FRAMES) {
@@ -673,11 +709,12 @@ public final class Choreographer {
 
     void doCallbacks(int callbackType, long frameTimeNanos) {
         CallbackRecord callbacks;
+        final long now;
         synchronized (mLock) {
             // We use "now" to determine when callbacks become due because it's possible
             // for earlier processing phases in a frame to post callbacks that should run
             // in a following phase, such as an input event that causes an animation to start.
-            final long now = System.nanoTime();
+            now = System.nanoTime();
             callbacks = mCallbackQueues[callbackType].extractDueCallbacksLocked(
                     now / TimeUtils.NANOS_PER_MS);
             if (callbacks == null) {
@@ -732,6 +769,11 @@ public final class Choreographer {
                 } while (callbacks != null);
             }
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
+
+            final FrameAttributionRecorder attributionRecorder = mFrameAttributionRecorder;
+            if (attributionRecorder != null) {
+                attributionRecorder.setCallbackDuration(callbackType, System.nanoTime() - now);
+            }
         }
     }
 
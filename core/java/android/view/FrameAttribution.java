@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import android.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+
+/**
+ * Where the UI thread spent the time of a frame: the time taken by each type of
+ * {@link Choreographer} callback and, for frames in which views were sampled, the views that
+ * took the most time to measure, lay out or draw themselves.
+ * <p>
+ * Recorded by the Choreographer once {@link Choreographer#setFrameAttributionEnabled} is
+ * called, and available from the {@link FrameMetrics} of the frame through
+ * {@link FrameMetrics#getFrameAttribution()}.
+ * <p>
+ * Views are recorded by id and class rather than by reference, so that recorded frames don't
+ * keep views, and thus their activity, alive, and can be read on any thread.
+ *
+ * @hide
+ */
+public final class FrameAttribution {
+    /** The view was measured, see {@link View#onMeasure}. */
+    public static final int PHASE_MEASURE = 0;
+    /** The view was laid out, see {@link View#onLayout}. */
+    public static final int PHASE_LAYOUT = 1;
+    /** The view was drawn by its parent, see {@link ViewGroup#drawChild}. */
+    public static final int PHASE_DRAW = 2;
+
+    /** @hide */
+    @IntDef({PHASE_MEASURE, PHASE_LAYOUT, PHASE_DRAW})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Phase {}
+
+    /** The maximum number of views recorded for a frame. */
+    public static final int MAX_VIEW_COUNT = 5;
+
+    long mIntendedVsync;
+    final long[] mCallbackDurations = new long[Choreographer.CALLBACK_COMMIT + 1];
+    boolean mViewsSampled;
+    int mViewCount;
+    /** Sorted by decreasing duration. */
+    final int[] mViewIds = new int[MAX_VIEW_COUNT];
+    final String[] mViewClassNames = new String[MAX_VIEW_COUNT];
+    final int[] mViewPhases = new int[MAX_VIEW_COUNT];
+    final long[] mViewDurations = new long[MAX_VIEW_COUNT];
+
+    public FrameAttribution() {
+    }
+
+    public FrameAttribution(FrameAttribution other) {
+        set(other);
+    }
+
+    /**
+     * @return the intended start of the frame, which matches
+     *         {@link FrameMetrics#INTENDED_VSYNC_TIMESTAMP}
+     */
+    public long getIntendedVsyncTimestamp() {
+        return mIntendedVsync;
+    }
+
+    /**
+     * @param callbackType one of the {@link Choreographer} callback types, such as
+     *                     {@link Choreographer#CALLBACK_TRAVERSAL}
+     * @return the time spent running the callbacks of the type, in nanoseconds
+     */
+    public long getCallbackDuration(int callbackType) {
+        return mCallbackDurations[callbackType];
+    }
+
+    /**
+     * @return whether the views of the frame were sampled. If not, {@link #getViewCount()} is 0.
+     */
+    public boolean areViewsSampled() {
+        return mViewsSampled;
+    }
+
+    /**
+     * @return the number of views recorded, at most {@link #MAX_VIEW_COUNT}
+     */
+    public int getViewCount() {
+        return mViewCount;
+    }
+
+    /**
+     * @return the id of the view with the {@code index}th largest duration, which may be
+     *         {@link View#NO_ID}
+     */
+    public int getViewId(int index) {
+        checkViewIndex(index);
+        return mViewIds[index];
+    }
+
+    /**
+     * @return the class name of the view with the {@code index}th largest duration
+     */
+    public String getViewClassName(int index) {
+        checkViewIndex(index);
+        return mViewClassNames[index];
+    }
+
+    /**
+     * @return what the view at {@code index} was doing
+     */
+    public @Phase int getViewPhase(int index) {
+        checkViewIndex(index);
+        return mViewPhases[index];
+    }
+
+    /**
+     * @return the time the view at {@code index} spent in the phase, excluding the time spent
+     *         in its children, in nanoseconds
+     */
+    public long getViewDuration(int index) {
+        checkViewIndex(index);
+        return mViewDurations[index];
+    }
+
+    private void checkViewIndex(int index) {
+        if (index < 0 || index >= mViewCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mViewCount);
+        }
+    }
+
+    void set(FrameAttribution other) {
+        mIntendedVsync = other.mIntendedVsync;
+        System.arraycopy(other.mCallbackDurations, 0, mCallbackDurations, 0,
+                mCallbackDurations.length);
+        mViewsSampled = other.mViewsSampled;
+        mViewCount = other.mViewCount;
+        System.arraycopy(other.mViewIds, 0, mViewIds, 0, MAX_VIEW_COUNT);
+        System.arraycopy(other.mViewClassNames, 0, mViewClassNames, 0, MAX_VIEW_COUNT);
+        System.arraycopy(other.mViewPhases, 0, mViewPhases, 0, MAX_VIEW_COUNT);
+        System.arraycopy(other.mViewDurations, 0, mViewDurations, 0, MAX_VIEW_COUNT);
+    }
+
+    void clear() {
+        mIntendedVsync = 0;
+        Arrays.fill(mCallbackDurations, 0);
+        mViewsSampled = false;
+        mViewCount = 0;
+        Arrays.fill(mViewClassNames, null);
+    }
+
+    /**
+     * Records the view if it is among the {@link #MAX_VIEW_COUNT} slowest ones so far.
+     */
+    void offerView(View view, @Phase int phase, long duration) {
+        int index = mViewCount;
+        if (index == MAX_VIEW_COUNT) {
+            if (duration <= mViewDurations[MAX_VIEW_COUNT - 1]) {
+                return;
+            }
+            index--;
+        } else {
+            mViewCount++;
+        }
+        while (index > 0 && mViewDurations[index - 1] < duration) {
+            mViewIds[index] = mViewIds[index - 1];
+            mViewClassNames[index] = mViewClassNames[index - 1];
+            mViewPhases[index] = mViewPhases[index - 1];
+            mViewDurations[index] = mViewDurations[index - 1];
+            index--;
+        }
+        mViewIds[index] = view.getId();
+        // Class.getName() caches the name, so this doesn't allocate.
+        mViewClassNames[index] = view.getClass().getName();
+        mViewPhases[index] = phase;
+        mViewDurations[index] = duration;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import com.android.internal.annotations.GuardedBy;
+
+/**
+ * Records a {@link FrameAttribution} for every frame of a {@link Choreographer} into a ring
+ * buffer of the most recent frames, which is read when the {@link FrameMetrics} of a frame are
+ * delivered, usually a few frames later and on another thread.
+ * <p>
+ * Everything but {@link #getFrame} is called on the thread of the Choreographer. Views are only
+ * timed in sampled frames, from the {@link View#onMeasure}, {@link View#onLayout} and
+ * {@link ViewGroup#drawChild} calls; the time of a view excludes the time of the views it
+ * measures, lays out or draws.
+ */
+final class FrameAttributionRecorder {
+    private static final int FRAME_COUNT = 16;
+
+    /** Deeper views are accounted to their ancestor at this depth. */
+    private static final int MAX_DEPTH = 64;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final FrameAttribution[] mFrames = new FrameAttribution[FRAME_COUNT];
+    @GuardedBy("mLock")
+    private int mNextFrame;
+
+    private final FrameAttribution mCurrentFrame = new FrameAttribution();
+    private final int mViewSamplingInterval;
+    private int mFramesUntilViewSample;
+    private boolean mSamplingViews;
+
+    /** Start time and time spent in children of the views being timed, by depth. */
+    private final long[] mStartTimes = new long[MAX_DEPTH];
+    private final long[] mChildTimes = new long[MAX_DEPTH];
+    private int mDepth;
+
+    /**
+     * @param viewSamplingInterval views are timed every that many frames, or never if 0
+     */
+    FrameAttributionRecorder(int viewSamplingInterval) {
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mFrames[i] = new FrameAttribution();
+        }
+        mViewSamplingInterval = viewSamplingInterval;
+        mFramesUntilViewSample = viewSamplingInterval;
+    }
+
+    void beginFrame(long intendedVsync) {
+        mCurrentFrame.clear();
+        mCurrentFrame.mIntendedVsync = intendedVsync;
+        mDepth = 0;
+        if (mViewSamplingInterval > 0 && --mFramesUntilViewSample <= 0) {
+            mFramesUntilViewSample = mViewSamplingInterval;
+            mSamplingViews = true;
+            mCurrentFrame.mViewsSampled = true;
+        }
+    }
+
+    void setCallbackDuration(int callbackType, long duration) {
+        mCurrentFrame.mCallbackDurations[callbackType] = duration;
+    }
+
+    void endFrame() {
+        mSamplingViews = false;
+        synchronized (mLock) {
+            mFrames[mNextFrame].set(mCurrentFrame);
+            mNextFrame = (mNextFrame + 1) % FRAME_COUNT;
+        }
+        mCurrentFrame.clear();
+    }
+
+    /**
+     * Starts timing a view, if views are sampled in this frame.
+     *
+     * @return true if {@link #exitView} must be called when the view is done
+     */
+    boolean enterView() {
+        if (!mSamplingViews) {
+            return false;
+        }
+        final int depth = mDepth++;
+        if (depth < MAX_DEPTH) {
+            mStartTimes[depth] = System.nanoTime();
+            mChildTimes[depth] = 0;
+        }
+        return true;
+    }
+
+    void exitView(View view, @FrameAttribution.Phase int phase) {
+        final int depth = --mDepth;
+        if (depth < 0) {
+            // The frame ended while the view was being timed.
+            mDepth = 0;
+            return;
+        }
+        if (depth >= MAX_DEPTH) {
+            return;
+        }
+        final long duration = System.nanoTime() - mStartTimes[depth];
+        if (depth > 0) {
+            mChildTimes[depth - 1] += duration;
+        }
+        mCurrentFrame.offerView(view, phase, duration - mChildTimes[depth]);
+    }
+
+    /**
+     * Forgets the recorded frames.
+     */
+    void clear() {
+        synchronized (mLock) {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                mFrames[i].clear();
+            }
+        }
+    }
+
+    /**
+     * Copies the attribution of the frame with the given intended vsync into {@code out}.
+     *
+     * @return false if the frame is not in the buffer any more
+     */
+    boolean getFrame(long intendedVsync, FrameAttribution out) {
+        synchronized (mLock) {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                final FrameAttribution frame = mFrames[i];
+                if (frame.mIntendedVsync == intendedVsync && intendedVsync != 0) {
+                    out.set(frame);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
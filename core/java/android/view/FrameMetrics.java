@@ -251,6 +251,8 @@ public final class FrameMetrics {
 
     /* package */ final long[] mTimingData;
 
+    /* package */ FrameAttribution mAttribution;
+
     /**
      * Constructs a FrameMetrics object as a copy.
      * <p>
@@ -263,6 +265,9 @@ public final class FrameMetrics {
     public FrameMetrics(FrameMetrics other) {
         mTimingData = new long[Index.FRAME_STATS_COUNT];
         System.arraycopy(other.mTimingData, 0, mTimingData, 0, mTimingData.length);
+        if (other.mAttribution != null) {
+            mAttribution = new FrameAttribution(other.mAttribution);
+        }
     }
 
     /**
@@ -303,5 +308,17 @@ public final class FrameMetrics {
         return mTimingData[DURATIONS[durationsIdx + 1]]
                 - mTimingData[DURATIONS[durationsIdx]];
     }
+
+    /**
+     * Returns where the UI thread spent the time of this frame, if
+     * {@link Choreographer#setFrameAttributionEnabled} was called on its thread and the frame is
+     * still recent enough.
+     *
+     * @return the attribution of the frame, or null if it is not available
+     * @hide
+     */
+    public FrameAttribution getFrameAttribution() {
+        return mAttribution;
+    }
 }
 
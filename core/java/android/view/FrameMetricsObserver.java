@@ -37,6 +37,8 @@ public class FrameMetricsObserver {
 
     private FrameMetrics mFrameMetrics;
 
+    private final FrameAttribution mFrameAttribution = new FrameAttribution();
+
     /* package */ Window.OnFrameMetricsAvailableListener mListener;
     /* package */ VirtualRefBasePtr mNative;
 
@@ -66,7 +68,22 @@ public class FrameMetricsObserver {
     private void notifyDataAvailable(int dropCount) {
         final Window window = mWindow.get();
         if (window != null) {
+            updateFrameAttribution(window);
             mListener.onFrameMetricsAvailable(window, mFrameMetrics, dropCount);
         }
     }
+
+    private void updateFrameAttribution(Window window) {
+        final View decorView = window.peekDecorView();
+        final ViewRootImpl viewRoot = decorView != null ? decorView.getViewRootImpl() : null;
+        final FrameAttributionRecorder recorder =
+                viewRoot != null ? viewRoot.mChoreographer.mFrameAttributionRecorder : null;
+        final long intendedVsync =
+                mFrameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP);
+        if (recorder != null && recorder.getFrame(intendedVsync, mFrameAttribution)) {
+            mFrameMetrics.mAttribution = mFrameAttribution;
+        } else {
+            mFrameMetrics.mAttribution = null;
+        }
+    }
 }
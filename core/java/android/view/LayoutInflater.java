@@ -31,7 +31,19 @@ import android.util.AttributeSet;
 import android.util.Log;
 import android.util.TypedValue;
 import android.util.Xml;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.FrameLayout;
+import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.RelativeLayout;
+import android.widget.ScrollView;
+import android.widget.Space;
+import android.widget.TextView;
 
 import com.android.internal.R;
 
@@ -40,6 +52,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 
 /**
@@ -93,6 +106,53 @@ public abstract class LayoutInflater {
     private static final HashMap<String, Constructor<? extends View>> sConstructorMap =
             new HashMap<String, Constructor<? extends View>>();
 
+    /**
+     * Common framework views that can be created without reflection once their constructor has
+     * been cached in {@link #sConstructorMap}, keyed the same way.
+     */
+    private static final HashMap<String, FrameworkView> sFrameworkViews =
+            new HashMap<String, FrameworkView>();
+
+    private static final class FrameworkView {
+        final Class<? extends View> clazz;
+        final ViewConstructor constructor;
+
+        FrameworkView(Class<? extends View> clazz, ViewConstructor constructor) {
+            this.clazz = clazz;
+            this.constructor = constructor;
+        }
+    }
+
+    private interface ViewConstructor {
+        View newInstance(Context context, AttributeSet attrs);
+    }
+
+    private static void addFrameworkView(Class<? extends View> clazz,
+            ViewConstructor constructor) {
+        final FrameworkView view = new FrameworkView(clazz, constructor);
+        // Tags can name the class with or without its package.
+        sFrameworkViews.put(clazz.getSimpleName(), view);
+        sFrameworkViews.put(clazz.getName(), view);
+    }
+
+    static {
+        addFrameworkView(View.class, View::new);
+        addFrameworkView(ViewStub.class, ViewStub::new);
+        addFrameworkView(Button.class, Button::new);
+        addFrameworkView(CheckBox.class, CheckBox::new);
+        addFrameworkView(EditText.class, EditText::new);
+        addFrameworkView(FrameLayout.class, FrameLayout::new);
+        addFrameworkView(ImageButton.class, ImageButton::new);
+        addFrameworkView(ImageView.class, ImageView::new);
+        addFrameworkView(LinearLayout.class, LinearLayout::new);
+        addFrameworkView(ListView.class, ListView::new);
+        addFrameworkView(ProgressBar.class, ProgressBar::new);
+        addFrameworkView(RelativeLayout.class, RelativeLayout::new);
+        addFrameworkView(ScrollView.class, ScrollView::new);
+        addFrameworkView(Space.class, Space::new);
+        addFrameworkView(TextView.class, TextView::new);
+    }
+
     private HashMap<String, Boolean> mFilterMap;
 
     private TypedValue mTempValue;
@@ -596,6 +656,14 @@ public abstract class LayoutInflater {
             constructor = null;
             sConstructorMap.remove(name);
         }
+        ViewConstructor frameworkConstructor = null;
+        if (constructor != null) {
+            // Skip reflection if the cached constructor is one we can call directly.
+            final FrameworkView frameworkView = sFrameworkViews.get(name);
+            if (frameworkView != null && frameworkView.clazz == constructor.getDeclaringClass()) {
+                frameworkConstructor = frameworkView.constructor;
+            }
+        }
         Class<? extends View> clazz = null;
 
         try {
@@ -644,7 +712,19 @@ public abstract class LayoutInflater {
             Object[] args = mConstructorArgs;
             args[1] = attrs;
 
-            final View view = constructor.newInstance(args);
+            final View view;
+            if (frameworkConstructor != null) {
+                try {
+                    view = frameworkConstructor.newInstance((Context) args[0], attrs);
+                } catch (RuntimeException e) {
+                    // Thrown by the constructor of the view, so wrap it the way reflection does
+                    // rather than reporting e.g. a ClassCastException as a class mismatch.
+                    clazz = constructor.getDeclaringClass();
+                    throw new InvocationTargetException(e);
+                }
+            } else {
+                view = constructor.newInstance(args);
+            }
             if (view instanceof ViewStub) {
                 // Use the same context when inflating ViewStub later.
                 final ViewStub viewStub = (ViewStub) view;
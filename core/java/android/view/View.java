@@ -74,6 +74,7 @@ import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.os.Trace;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.FloatProperty;
 import android.util.LayoutDirection;
@@ -840,6 +841,11 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
      */
     private static boolean sAlwaysRemeasureExactly = false;
 
+    /**
+     * Whether view classes override {@link #requestLayout()}, see {@link #setMeasureBoundary}.
+     */
+    private static final ArrayMap<Class<?>, Boolean> sOverridesRequestLayout = new ArrayMap<>();
+
     /**
      * Relax constraints around whether setLayoutParams() must be called after
      * modifying the layout params.
@@ -3129,6 +3135,20 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
      */
     static final int PFLAG3_NOTIFY_AUTOFILL_ENTER_ON_LAYOUT = 0x8000000;
 
+    /**
+     * Flag indicating that the measured size of this view only depends on its MeasureSpecs.
+     *
+     * @see #setMeasureBoundary(boolean)
+     */
+    private static final int PFLAG3_MEASURE_BOUNDARY = 0x10000000;
+
+    /**
+     * Flag indicating that a descendant inside a measure boundary requested a layout, and that
+     * this view must measure and lay out again the children that need it, with their previous
+     * MeasureSpecs and frames.
+     */
+    static final int PFLAG3_DESCENDANT_NEEDS_LAYOUT = 0x20000000;
+
     /* End of masks for mPrivateFlags3 */
 
     /**
@@ -19587,7 +19607,12 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
                 setOpticalFrame(l, t, r, b) : setFrame(l, t, r, b);
 
         if (changed || (mPrivateFlags & PFLAG_LAYOUT_REQUIRED) == PFLAG_LAYOUT_REQUIRED) {
+            final FrameAttributionRecorder attributionRecorder = getFrameAttributionRecorder();
+            final boolean timed = attributionRecorder != null && attributionRecorder.enterView();
             onLayout(changed, l, t, r, b);
+            if (timed) {
+                attributionRecorder.exitView(this, FrameAttribution.PHASE_LAYOUT);
+            }
 
             if (shouldDrawRoundScrollbar()) {
                 if(mRoundScrollbarRenderer == null) {
@@ -19608,10 +19633,13 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
                     listenersCopy.get(i).onLayoutChange(this, l, t, r, b, oldL, oldT, oldR, oldB);
                 }
             }
+        } else if ((mPrivateFlags3 & PFLAG3_DESCENDANT_NEEDS_LAYOUT) != 0) {
+            layoutDescendantsInBoundaries(l, t, r, b);
         }
 
         mPrivateFlags &= ~PFLAG_FORCE_LAYOUT;
         mPrivateFlags3 |= PFLAG3_IS_LAID_OUT;
+        mPrivateFlags3 &= ~PFLAG3_DESCENDANT_NEEDS_LAYOUT;
 
         if ((mPrivateFlags3 & PFLAG3_NOTIFY_AUTOFILL_ENTER_ON_LAYOUT) != 0) {
             mPrivateFlags3 &= ~PFLAG3_NOTIFY_AUTOFILL_ENTER_ON_LAYOUT;
@@ -21923,13 +21951,125 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
         mPrivateFlags |= PFLAG_INVALIDATED;
 
         if (mParent != null && !mParent.isLayoutRequested()) {
-            mParent.requestLayout();
+            if (!(mParent instanceof View) || !((View) mParent).requestLayoutInBoundary()) {
+                mParent.requestLayout();
+            }
         }
         if (mAttachInfo != null && mAttachInfo.mViewRequestingLayout == this) {
             mAttachInfo.mViewRequestingLayout = null;
         }
     }
 
+    /**
+     * Handles a layout request from a child. If this view is a measure boundary, it is forced to
+     * be measured and laid out again with its current MeasureSpecs and frame, and its ancestors
+     * are only marked with {@link #PFLAG3_DESCENDANT_NEEDS_LAYOUT}.
+     *
+     * @return false if the request must be propagated with {@link #requestLayout()} instead
+     */
+    private boolean requestLayoutInBoundary() {
+        if ((mPrivateFlags3 & PFLAG3_MEASURE_BOUNDARY) == 0
+                || (mPrivateFlags3 & PFLAG3_IS_LAID_OUT) == 0 || isInLayout()) {
+            return false;
+        }
+        // Views that override requestLayout(), e.g. to invalidate what they computed in their
+        // last measure or to block requests during their layout, must see the request.
+        for (ViewParent p = this; p instanceof View; p = p.getParent()) {
+            if (overridesRequestLayout((View) p)) {
+                return false;
+            }
+        }
+
+        if (mMeasureCache != null) mMeasureCache.clear();
+        mPrivateFlags |= PFLAG_FORCE_LAYOUT;
+        mPrivateFlags |= PFLAG_INVALIDATED;
+
+        ViewParent parent = mParent;
+        while (parent instanceof View) {
+            final View view = (View) parent;
+            if ((view.mPrivateFlags & PFLAG_FORCE_LAYOUT) != 0
+                    || (view.mPrivateFlags3 & PFLAG3_DESCENDANT_NEEDS_LAYOUT) != 0) {
+                // A traversal is already scheduled.
+                return true;
+            }
+            view.mPrivateFlags3 |= PFLAG3_DESCENDANT_NEEDS_LAYOUT;
+            parent = view.mParent;
+        }
+        if (parent != null) {
+            parent.requestLayout();
+        }
+        return true;
+    }
+
+    private static boolean overridesRequestLayout(View view) {
+        final Class<?> viewClass = view.getClass();
+        synchronized (sOverridesRequestLayout) {
+            Boolean overrides = sOverridesRequestLayout.get(viewClass);
+            if (overrides == null) {
+                try {
+                    overrides = viewClass.getMethod("requestLayout").getDeclaringClass()
+                            != View.class;
+                } catch (NoSuchMethodException e) {
+                    overrides = false;
+                }
+                sOverridesRequestLayout.put(viewClass, overrides);
+            }
+            return overrides;
+        }
+    }
+
+    /**
+     * Declares whether the measured size of this view only depends on the MeasureSpecs it is
+     * measured with, and not on its content or its descendants, as is the case for a view
+     * with a fixed size or that matches the size of its parent.
+     * <p>
+     * A layout request from a descendant of a measure boundary does not force its ancestors to
+     * measure and lay out again: the boundary is measured again with its previous
+     * MeasureSpecs and laid out at its current position, and its ancestors only pass the
+     * measure and layout down to it. If its measured size changes anyway, its parent measures
+     * all its children again, as it does if the baseline of the boundary changes.
+     * <p>
+     * The boundary has no effect if it or any of its ancestors overrides
+     * {@link #requestLayout()}, as those would not see the requests.
+     *
+     * @param boundary true if the measured size of this view only depends on its MeasureSpecs
+     * @hide
+     */
+    public void setMeasureBoundary(boolean boundary) {
+        if (boundary) {
+            mPrivateFlags3 |= PFLAG3_MEASURE_BOUNDARY;
+        } else {
+            mPrivateFlags3 &= ~PFLAG3_MEASURE_BOUNDARY;
+        }
+    }
+
+    /**
+     * @return true if this view is a measure boundary
+     * @see #setMeasureBoundary(boolean)
+     * @hide
+     */
+    public boolean isMeasureBoundary() {
+        return (mPrivateFlags3 & PFLAG3_MEASURE_BOUNDARY) != 0;
+    }
+
+    /**
+     * Measures again, with their previous MeasureSpecs, the children that requested a layout
+     * from inside a measure boundary, see {@link #PFLAG3_DESCENDANT_NEEDS_LAYOUT}.
+     *
+     * @return false if the measured size of a child changed, in which case this view must be
+     *         measured again
+     */
+    boolean measureDescendantsInBoundaries() {
+        return true;
+    }
+
+    /**
+     * Lays out again, at their current positions, the children that were measured by
+     * {@link #measureDescendantsInBoundaries()}.
+     */
+    void layoutDescendantsInBoundaries(int left, int top, int right, int bottom) {
+    }
+
     /**
      * Forces this view to be laid out during the next layout pass.
      * This method does not call requestLayout() or forceLayout()
@@ -21976,7 +22116,7 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
         long key = (long) widthMeasureSpec << 32 | (long) heightMeasureSpec & 0xffffffffL;
         if (mMeasureCache == null) mMeasureCache = new LongSparseLongArray(2);
 
-        final boolean forceLayout = (mPrivateFlags & PFLAG_FORCE_LAYOUT) == PFLAG_FORCE_LAYOUT;
+        boolean forceLayout = (mPrivateFlags & PFLAG_FORCE_LAYOUT) == PFLAG_FORCE_LAYOUT;
 
         // Optimize layout by avoiding an extra EXACTLY pass when the view is
         // already measured as the correct size. In API 23 and below, this
@@ -21990,6 +22130,13 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
         final boolean needsLayout = specChanged
                 && (sAlwaysRemeasureExactly || !isSpecExactly || !matchesSpecSize);
 
+        if (!forceLayout && !needsLayout
+                && (mPrivateFlags3 & PFLAG3_DESCENDANT_NEEDS_LAYOUT) != 0) {
+            // Only views inside measure boundaries requested a layout, so the size of this view
+            // is the same unless a boundary changed size anyway.
+            forceLayout = !measureDescendantsInBoundaries();
+        }
+
         if (forceLayout || needsLayout) {
             // first clears the measured dimension flag
             mPrivateFlags &= ~PFLAG_MEASURED_DIMENSION_SET;
@@ -21998,14 +22145,27 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
 
             int cacheIndex = forceLayout ? -1 : mMeasureCache.indexOfKey(key);
             if (cacheIndex < 0 || sIgnoreMeasureCache) {
+                final FrameAttributionRecorder attributionRecorder =
+                        getFrameAttributionRecorder();
+                final boolean timed =
+                        attributionRecorder != null && attributionRecorder.enterView();
                 // measure ourselves, this should set the measured dimension flag back
                 onMeasure(widthMeasureSpec, heightMeasureSpec);
+                if (timed) {
+                    attributionRecorder.exitView(this, FrameAttribution.PHASE_MEASURE);
+                }
                 mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                if (mAttachInfo != null) {
+                    mAttachInfo.mMeasureCount++;
+                }
             } else {
                 long value = mMeasureCache.valueAt(cacheIndex);
                 // Casting a long to int drops the high 32 bits, no mask needed
                 setMeasuredDimensionRaw((int) (value >> 32), (int) value);
                 mPrivateFlags3 |= PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                if (mAttachInfo != null) {
+                    mAttachInfo.mMeasureSkipCount++;
+                }
             }
 
             // flag not set, setMeasuredDimension() was not invoked, we raise
@@ -22018,6 +22178,8 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
             }
 
             mPrivateFlags |= PFLAG_LAYOUT_REQUIRED;
+        } else if (mAttachInfo != null) {
+            mAttachInfo.mMeasureSkipCount++;
         }
 
         mOldWidthMeasureSpec = widthMeasureSpec;
@@ -22027,6 +22189,17 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
                 (long) mMeasuredHeight & 0xffffffffL); // suppress sign extension
     }
 
+    /**
+     * @return The recorder of the frame attribution of the window, or null.
+     */
+    final FrameAttributionRecorder getFrameAttributionRecorder() {
+        final AttachInfo attachInfo = mAttachInfo;
+        if (attachInfo == null || attachInfo.mViewRootImpl == null) {
+            return null;
+        }
+        return attachInfo.mViewRootImpl.mChoreographer.mFrameAttributionRecorder;
+    }
+
     /**
      * <p>
      * Measure the view and its content to determine the measured width and the
@@ -25490,6 +25663,14 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
          */
         View mViewRequestingLayout;
 
+        /**
+         * Number of views measured, and of views whose measure was skipped because their
+         * MeasureSpecs didn't change or their size was cached, since the start of the current
+         * traversal.
+         */
+        int mMeasureCount;
+        int mMeasureSkipCount;
+
         /**
          * Used to track views that need (at least) a partial relayout at their current size
          * during the next traversal.
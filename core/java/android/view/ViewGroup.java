@@ -4211,6 +4211,12 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
      * @return True if an invalidate() was issued
      */
     protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        final FrameAttributionRecorder attributionRecorder = getFrameAttributionRecorder();
+        if (attributionRecorder != null && attributionRecorder.enterView()) {
+            final boolean more = child.draw(canvas, this, drawingTime);
+            attributionRecorder.exitView(child, FrameAttribution.PHASE_DRAW);
+            return more;
+        }
         return child.draw(canvas, this, drawingTime);
     }
 
@@ -6061,6 +6067,54 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
     protected abstract void onLayout(boolean changed,
             int l, int t, int r, int b);
 
+    @Override
+    boolean measureDescendantsInBoundaries() {
+        final boolean optical = isLayoutModeOptical();
+        final int count = mChildrenCount;
+        final View[] children = mChildren;
+        for (int i = 0; i < count; i++) {
+            final View child = children[i];
+            if (child.getVisibility() == GONE
+                    || ((child.mPrivateFlags & PFLAG_FORCE_LAYOUT) == 0
+                    && (child.mPrivateFlags3 & PFLAG3_DESCENDANT_NEEDS_LAYOUT) == 0)) {
+                continue;
+            }
+            if (optical != isLayoutModeOptical(child)) {
+                // The previous MeasureSpecs were adjusted for optical insets.
+                return false;
+            }
+            final int oldWidth = child.mMeasuredWidth;
+            final int oldHeight = child.mMeasuredHeight;
+            final int oldBaseline = child.getBaseline();
+            child.measure(child.mOldWidthMeasureSpec, child.mOldHeightMeasureSpec);
+            // Baseline aligned layouts position their children with their baselines.
+            if (child.mMeasuredWidth != oldWidth || child.mMeasuredHeight != oldHeight
+                    || child.getBaseline() != oldBaseline) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void layoutDescendantsInBoundaries(int l, int t, int r, int b) {
+        if (isLayoutModeOptical()) {
+            // The frames of the children are offset by their optical insets.
+            onLayout(false, l, t, r, b);
+            return;
+        }
+        final int count = mChildrenCount;
+        final View[] children = mChildren;
+        for (int i = 0; i < count; i++) {
+            final View child = children[i];
+            if (child.getVisibility() != GONE
+                    && ((child.mPrivateFlags & PFLAG_LAYOUT_REQUIRED) != 0
+                    || (child.mPrivateFlags3 & PFLAG3_DESCENDANT_NEEDS_LAYOUT) != 0)) {
+                child.layout(child.mLeft, child.mTop, child.mRight, child.mBottom);
+            }
+        }
+    }
+
     /**
      * Indicates whether the view group has the ability to animate its children
      * after the first layout.
@@ -285,6 +285,11 @@ public final class ViewRootImpl implements ViewParent,
     // Set to true to stop input during an Activity Transition.
     boolean mPausedForTransition = false;
 
+    // Number of views measured, and of views whose measure was skipped, during the last
+    // traversal.
+    int mLastTraversalMeasureCount;
+    int mLastTraversalMeasureSkipCount;
+
     boolean mLastInCompatMode = false;
 
     SurfaceHolder.Callback2 mSurfaceHolderCallback;
@@ -1383,8 +1388,20 @@ public final class ViewRootImpl implements ViewParent,
                 Debug.startMethodTracing("ViewAncestor");
             }
 
+            mAttachInfo.mMeasureCount = 0;
+            mAttachInfo.mMeasureSkipCount = 0;
+
             performTraversals();
 
+            mLastTraversalMeasureCount = mAttachInfo.mMeasureCount;
+            mLastTraversalMeasureSkipCount = mAttachInfo.mMeasureSkipCount;
+            if (Trace.isTagEnabled(Trace.TRACE_TAG_VIEW)) {
+                Trace.traceCounter(Trace.TRACE_TAG_VIEW, "measures",
+                        mLastTraversalMeasureCount);
+                Trace.traceCounter(Trace.TRACE_TAG_VIEW, "skipped measures",
+                        mLastTraversalMeasureSkipCount);
+            }
+
             if (mProfile) {
                 Debug.stopMethodTracing();
                 mProfile = false;
@@ -6223,6 +6240,10 @@ public final class ViewRootImpl implements ViewParent,
         } else {
             writer.println();
         }
+        writer.print(innerPrefix); writer.print("mLastTraversalMeasureCount=");
+                writer.print(mLastTraversalMeasureCount);
+                writer.print(" mLastTraversalMeasureSkipCount=");
+                writer.println(mLastTraversalMeasureSkipCount);
         mFirstInputStage.dump(innerPrefix, writer);
 
         mChoreographer.dump(prefix, writer);
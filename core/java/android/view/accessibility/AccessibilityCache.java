@@ -176,10 +176,20 @@ public final class AccessibilityCache {
                     clearSubTreeLocked(event.getWindowId(), event.getSourceNodeId());
                 } break;
 
-                case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
-                case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED: {
+                case AccessibilityEvent.TYPE_WINDOWS_CHANGED: {
                     clear();
                 } break;
+
+                case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED: {
+                    // Only the nodes of the changed window are stale, if it is known.
+                    final int windowId = event.getWindowId();
+                    if (windowId == AccessibilityWindowInfo.UNDEFINED_WINDOW_ID) {
+                        clear();
+                    } else {
+                        clearWindowCache();
+                        clearNodesForWindowLocked(windowId);
+                    }
+                } break;
             }
         }
 
@@ -48,8 +48,10 @@ import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseLongArray;
 import android.util.StateSet;
 import android.view.ActionMode;
+import android.view.Choreographer;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Gravity;
 import android.view.HapticFeedbackConstants;
@@ -92,9 +94,11 @@ import android.view.inputmethod.InputMethodManager;
 import android.widget.RemoteViews.OnClickHandler;
 
 import com.android.internal.R;
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class that can be used to implement virtualized lists of items. A list does
@@ -621,6 +625,13 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
      */
     private int mLastScrollState = OnScrollListener.SCROLL_STATE_IDLE;
 
+    /**
+     * Prefetches the views of the items about to scroll into view, or null if item prefetch is
+     * disabled.
+     */
+    @VisibleForTesting
+    Prefetcher mPrefetcher;
+
     /**
      * Helper object that renders and controls the fast scroll thumb.
      */
@@ -953,6 +964,10 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
      */
     @Override
     public void setAdapter(ListAdapter adapter) {
+        if (mPrefetcher != null) {
+            mPrefetcher.reset();
+        }
+
         if (adapter != null) {
             mAdapterHasStableIds = mAdapter.hasStableIds();
             if (mChoiceMode != CHOICE_MODE_NONE && mAdapterHasStableIds &&
@@ -1509,6 +1524,46 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         return mSmoothScrollbarEnabled;
     }
 
+    /**
+     * When enabled, the views of the items that are about to scroll into view are created and
+     * bound while the UI thread is idle after a frame, as long as the adapter is expected to be
+     * done before the next frame, instead of when they become visible. Disabled by default.
+     *
+     * @param enabled Whether or not to enable item prefetch.
+     *
+     * @see #isItemPrefetchEnabled()
+     * @hide
+     */
+    public void setItemPrefetchEnabled(boolean enabled) {
+        if (enabled == (mPrefetcher != null)) {
+            return;
+        }
+        if (enabled) {
+            mPrefetcher = new Prefetcher();
+        } else {
+            mPrefetcher.reset();
+            mPrefetcher = null;
+        }
+    }
+
+    /**
+     * @return True if item prefetch is enabled, false otherwise.
+     *
+     * @see #setItemPrefetchEnabled(boolean)
+     * @hide
+     */
+    public boolean isItemPrefetchEnabled() {
+        return mPrefetcher != null;
+    }
+
+    /**
+     * @return The number of items to prefetch beyond the visible ones in the direction of the
+     *         scroll.
+     */
+    int getPrefetchItemCount() {
+        return 2;
+    }
+
     /**
      * Set the listener that will receive notifications every time the list scrolls.
      *
@@ -2417,8 +2472,21 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             return transientView;
         }
 
-        final View scrapView = mRecycler.getScrapView(position);
-        View child = mAdapter.getView(position, scrapView, this);
+        // A prefetched view is already bound, so treat it as a scrap view that the adapter
+        // successfully re-bound.
+        View child = mPrefetcher != null ? mPrefetcher.take(position) : null;
+        final View scrapView;
+        if (child != null) {
+            scrapView = child;
+        } else {
+            scrapView = mRecycler.getScrapView(position);
+            final long startNs = mPrefetcher != null ? System.nanoTime() : 0;
+            child = mAdapter.getView(position, scrapView, this);
+            if (mPrefetcher != null) {
+                mPrefetcher.factorInTime(mAdapter.getItemViewType(position),
+                        scrapView != null && child == scrapView, System.nanoTime() - startNs);
+            }
+        }
 
         if (scrapView != null) {
             if (mListAnimationMode != 0 && !mIsWidget) {
@@ -3119,6 +3187,10 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         // Detach any view left in the scrap heap
         mRecycler.clear();
 
+        if (mPrefetcher != null) {
+            mPrefetcher.clear();
+        }
+
         final ViewTreeObserver treeObserver = getViewTreeObserver();
         treeObserver.removeOnTouchModeChangeListener(this);
         if (mTextFilterEnabled && mPopup != null) {
@@ -5423,6 +5495,9 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         }
 
         mRecycler.fullyDetachScrapViews();
+        if (mPrefetcher != null) {
+            mPrefetcher.post(down);
+        }
         if (!inTouchMode && mSelectedPosition != INVALID_POSITION) {
             final int childIndex = mSelectedPosition - mFirstPosition;
             if (childIndex >= 0 && childIndex < getChildCount()) {
@@ -6792,6 +6867,210 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         void onMovedToScrapHeap(View view);
     }
 
+    /**
+     * Creates and binds the views of the items that are about to scroll into view while the UI
+     * thread is idle after a frame, and hands them to {@link #obtainView}. The time the adapter
+     * takes to create and to bind a view is tracked per view type, and an item is only
+     * prefetched if the adapter is expected to be done with it before the next frame.
+     */
+    final class Prefetcher implements Runnable {
+        /** Prefetched views, by position. */
+        private final SparseArray<View> mViews = new SparseArray<>();
+
+        /** Running averages of the time the adapter takes, by view type. */
+        private final SparseLongArray mCreateAverageNs = new SparseLongArray();
+        private final SparseLongArray mBindAverageNs = new SparseLongArray();
+
+        private boolean mPosted;
+        private boolean mScrollingDown;
+
+        /** Number of views obtained from prefetched views. */
+        int mHitCount;
+        /** Number of views that had to be created or bound while scrolling. */
+        int mMissCount;
+        /** Number of prefetched views that were not used. */
+        int mDiscardCount;
+
+        /**
+         * Schedules prefetching after the current frame.
+         */
+        void post(boolean scrollingDown) {
+            mScrollingDown = scrollingDown;
+            if (!mPosted && isAttachedToWindow()) {
+                mPosted = true;
+                AbsListView.this.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            mPosted = false;
+            if (mAdapter == null || mDataChanged || getChildCount() == 0) {
+                return;
+            }
+
+            // The drawing time is the start of the frame that was just drawn.
+            final long lastFrameNs = TimeUnit.MILLISECONDS.toNanos(getDrawingTime());
+            if (lastFrameNs == 0) {
+                return;
+            }
+            prefetchItems(lastFrameNs + Choreographer.getInstance().getFrameIntervalNanos());
+        }
+
+        /**
+         * Prefetches the views of the items next to the visible ones in the direction of the
+         * last scroll, as long as they are expected to be ready by {@code deadlineNs}.
+         */
+        @VisibleForTesting
+        void prefetchItems(long deadlineNs) {
+            Trace.traceBegin(Trace.TRACE_TAG_VIEW, "AbsListView prefetch");
+            try {
+                // Only reuse scrap views that are no longer attached to the window.
+                mRecycler.fullyDetachScrapViews();
+
+                final int count = getPrefetchItemCount();
+                final int firstPosition = mFirstPosition;
+                final int lastPosition = firstPosition + getChildCount() - 1;
+                discardOutside(firstPosition - count, lastPosition + count);
+                for (int i = 1; i <= count; i++) {
+                    final int position = mScrollingDown ? lastPosition + i : firstPosition - i;
+                    if (position < 0 || position >= mItemCount) {
+                        break;
+                    }
+                    if (mViews.indexOfKey(position) < 0 && !prefetch(position, deadlineNs)) {
+                        break;
+                    }
+                }
+            } finally {
+                Trace.traceEnd(Trace.TRACE_TAG_VIEW);
+            }
+        }
+
+        /**
+         * @return false if the view for the position could not be prefetched in time
+         */
+        private boolean prefetch(int position, long deadlineNs) {
+            final int viewType = mAdapter.getItemViewType(position);
+            if (!mRecycler.shouldRecycleViewType(viewType)) {
+                // Headers and footers are kept around by the list anyway.
+                return true;
+            }
+
+            final long startNs = System.nanoTime();
+            final SparseLongArray averageNs = mRecycler.hasScrapView(viewType)
+                    ? mBindAverageNs : mCreateAverageNs;
+            if (startNs + averageNs.get(viewType) >= deadlineNs) {
+                return false;
+            }
+
+            final View scrapView = mRecycler.getScrapView(position);
+            final View child = mAdapter.getView(position, scrapView, AbsListView.this);
+            factorInTime(viewType, scrapView != null && child == scrapView,
+                    System.nanoTime() - startNs);
+            if (scrapView != null && child != scrapView) {
+                mRecycler.addDetachedScrapView(scrapView, position);
+            }
+
+            setItemViewLayoutParams(child, position);
+            mViews.put(position, child);
+            return true;
+        }
+
+        /**
+         * Updates the running average of the time the adapter takes to create views of the
+         * given type, or to bind them if {@code bound} is true.
+         */
+        void factorInTime(int viewType, boolean bound, long timeNs) {
+            if (!mRecycler.shouldRecycleViewType(viewType)) {
+                return;
+            }
+            final SparseLongArray averageNs = bound ? mBindAverageNs : mCreateAverageNs;
+            final long oldAverageNs = averageNs.get(viewType);
+            averageNs.put(viewType,
+                    oldAverageNs == 0 ? timeNs : oldAverageNs / 4 * 3 + timeNs / 4);
+        }
+
+        /**
+         * @return the prefetched view for the position, or null if there is none
+         */
+        View take(int position) {
+            if (mDataChanged) {
+                // The views may show stale data.
+                for (int i = mViews.size() - 1; i >= 0; i--) {
+                    discard(mViews.valueAt(i), mViews.keyAt(i));
+                }
+                mViews.clear();
+                return null;
+            }
+
+            final int index = mViews.indexOfKey(position);
+            if (index < 0) {
+                countMiss(position);
+                return null;
+            }
+
+            final View view = mViews.valueAt(index);
+            mViews.removeAt(index);
+            final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+            if (lp.viewType != mAdapter.getItemViewType(position)
+                    || (mAdapterHasStableIds && lp.itemId != mAdapter.getItemId(position))) {
+                discard(view, position);
+                countMiss(position);
+                return null;
+            }
+            mHitCount++;
+            return view;
+        }
+
+        /**
+         * Counts a view obtained without prefetching while scrolling, unless it is of a type
+         * that is never prefetched, such as headers and footers.
+         */
+        private void countMiss(int position) {
+            if (mLastScrollState != OnScrollListener.SCROLL_STATE_IDLE
+                    && mRecycler.shouldRecycleViewType(mAdapter.getItemViewType(position))) {
+                mMissCount++;
+            }
+        }
+
+        /**
+         * Moves the prefetched views for positions outside of {@code [start, end]} to the
+         * scrap heap.
+         */
+        private void discardOutside(int start, int end) {
+            for (int i = mViews.size() - 1; i >= 0; i--) {
+                final int position = mViews.keyAt(i);
+                if (position < start || position > end) {
+                    discard(mViews.valueAt(i), position);
+                    mViews.removeAt(i);
+                }
+            }
+        }
+
+        private void discard(View view, int position) {
+            mRecycler.addDetachedScrapView(view, position);
+            mDiscardCount++;
+        }
+
+        /**
+         * Cancels prefetching and drops the prefetched views.
+         */
+        void clear() {
+            removeCallbacks(this);
+            mPosted = false;
+            mViews.clear();
+        }
+
+        /**
+         * Like {@link #clear}, also forgetting the times measured for the current adapter.
+         */
+        void reset() {
+            clear();
+            mCreateAverageNs.clear();
+            mBindAverageNs.clear();
+        }
+    }
+
     /**
      * The RecycleBin facilitates reuse of views across layouts. The RecycleBin has two levels of
      * storage: ActiveViews and ScrapViews. ActiveViews are those views which were onscreen at the
@@ -7004,6 +7283,47 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             return null;
         }
 
+        /**
+         * @return Whether there is a scrap view that {@link #getScrapView} could return for an
+         *         item of the given type.
+         */
+        boolean hasScrapView(int viewType) {
+            if (viewType < 0) {
+                return false;
+            }
+            if (mViewTypeCount == 1) {
+                return !mCurrentScrap.isEmpty();
+            }
+            return viewType < mScrapViews.length && !mScrapViews[viewType].isEmpty();
+        }
+
+        /**
+         * Puts a view that is not attached to the list, such as an unused prefetched view, into
+         * the list of scrap views. Unlike {@link #addScrapView}, there is no detach to start.
+         *
+         * @param scrap The view to add
+         * @param position The position the view was bound to
+         */
+        void addDetachedScrapView(View scrap, int position) {
+            final AbsListView.LayoutParams lp = (AbsListView.LayoutParams) scrap.getLayoutParams();
+            if (lp == null || !shouldRecycleViewType(lp.viewType)
+                    || lp.viewType >= mScrapViews.length || scrap.hasTransientState()) {
+                return;
+            }
+
+            lp.scrappedFromPosition = position;
+            clearScrapForRebind(scrap);
+            if (mViewTypeCount == 1) {
+                mCurrentScrap.add(scrap);
+            } else {
+                mScrapViews[lp.viewType].add(scrap);
+            }
+
+            if (mRecyclerListener != null) {
+                mRecyclerListener.onMovedToScrapHeap(scrap);
+            }
+        }
+
         /**
          * Puts a view into the list of scrap views.
          * <p>
@@ -7396,6 +7716,12 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         encoder.addProperty("list:smoothScrollbarEnabled", isSmoothScrollbarEnabled());
         encoder.addProperty("list:stackFromBottom", isStackFromBottom());
         encoder.addProperty("list:textFilterEnabled", isTextFilterEnabled());
+        encoder.addProperty("list:itemPrefetchEnabled", isItemPrefetchEnabled());
+        if (mPrefetcher != null) {
+            encoder.addProperty("list:prefetchHits", mPrefetcher.mHitCount);
+            encoder.addProperty("list:prefetchMisses", mPrefetcher.mMissCount);
+            encoder.addProperty("list:prefetchDiscards", mPrefetcher.mDiscardCount);
+        }
 
         View selectedView = getSelectedView();
         if (selectedView != null) {
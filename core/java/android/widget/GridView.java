@@ -2227,6 +2227,12 @@ public class GridView extends AbsListView {
         return mNumColumns;
     }
 
+    @Override
+    int getPrefetchItemCount() {
+        // Prefetch whole rows.
+        return super.getPrefetchItemCount() * Math.max(1, mNumColumns);
+    }
+
     /**
      * Make sure views are touching the top or bottom edge, as appropriate for
      * our gravity
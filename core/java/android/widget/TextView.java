@@ -76,6 +76,7 @@ import android.text.InputFilter;
 import android.text.InputType;
 import android.text.Layout;
 import android.text.ParcelableSpan;
+import android.text.PrecomputedText;
 import android.text.Selection;
 import android.text.SpanWatcher;
 import android.text.Spannable;
@@ -616,6 +617,8 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
     private CharSequence mText;
     private CharSequence mTransformed;
     private BufferType mBufferType = BufferType.NORMAL;
+    // Text set with setPrecomputedText(), until its layout has been used or the text changes.
+    private PrecomputedText mPrecomputedText;
 
     private CharSequence mHint;
     private Layout mHintLayout;
@@ -5252,8 +5255,38 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         }
     }
 
+    /**
+     * Returns the parameters that the layout of this view's text currently depends on, to
+     * precompute text for this view with {@link PrecomputedText#create}. Must be called on the
+     * UI thread.
+     *
+     * @param width the width available to the text, without padding and compound drawables
+     *
+     * @hide
+     */
+    public PrecomputedText.Params getPrecomputedTextParams(int width) {
+        return new PrecomputedText.Params(mTextPaint, width, getLayoutAlignment(),
+                getTextDirectionHeuristic(), mSpacingAdd, mSpacingMult, mIncludePad,
+                mBreakStrategy, mHyphenationFrequency, mJustificationMode);
+    }
+
+    /**
+     * Sets the text to {@link PrecomputedText#getText()}. The layout that was computed for it is
+     * used instead of laying out the text again, as long as this view still has the parameters
+     * the text was precomputed with and the text does not need to be ellipsized or truncated.
+     *
+     * @hide
+     */
+    public void setPrecomputedText(@NonNull PrecomputedText text) {
+        mPrecomputedText = text;
+        setText(text.getText(), mBufferType);
+    }
+
     private void setText(CharSequence text, BufferType type,
                          boolean notifyBefore, int oldlen) {
+        if (mPrecomputedText != null && text != mPrecomputedText.getText()) {
+            mPrecomputedText = null;
+        }
         mTextFromResource = false;
         if (text == null) {
             text = "";
@@ -7992,6 +8025,9 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
                 }
             }
         }
+        if (result == null && mPrecomputedText != null) {
+            result = takePrecomputedLayout(wantWidth, alignment, shouldEllipsize);
+        }
         if (result == null) {
             StaticLayout.Builder builder = StaticLayout.Builder.obtain(mTransformed,
                     0, mTransformed.length(), mTextPaint, wantWidth)
@@ -8013,6 +8049,21 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         return result;
     }
 
+    private Layout takePrecomputedLayout(int wantWidth, Layout.Alignment alignment,
+            boolean shouldEllipsize) {
+        final PrecomputedText precomputed = mPrecomputedText;
+        // The transformed text is only the same instance if there is no transformation.
+        if (mTransformed != precomputed.getText() || shouldEllipsize
+                || (mMaxMode == LINES && mMaximum != Integer.MAX_VALUE)
+                || !precomputed.getParams().matches(mTextPaint, wantWidth, alignment, mTextDir,
+                        mSpacingAdd, mSpacingMult, mIncludePad, mBreakStrategy,
+                        mHyphenationFrequency, mJustificationMode)) {
+            return null;
+        }
+        mPrecomputedText = null;
+        return precomputed.takeLayout(mTextPaint);
+    }
+
     private boolean compressText(float width) {
         if (isHardwareAccelerated()) return false;
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Parcel;
+import android.util.AtomicFile;
+import android.util.Slog;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Battery history that no longer fits in the in-memory history buffer of
+ * {@link BatteryStatsImpl}.
+ *
+ * Whenever the history buffer fills up, its contents are handed over to this class and
+ * written, compressed, to a numbered file in the history directory. Every chunk starts with an
+ * absolute history record, so chunks can be decoded independently of each other; the small
+ * header at the start of each file holds the time of the last record in the chunk, which lets
+ * readers skip chunks that end before the range they are interested in without decompressing
+ * them. Only the chunk currently being read is kept in memory.
+ */
+public class BatteryStatsHistoryChunks {
+    private static final String TAG = "BatteryStatsHistory";
+
+    private static final int MAGIC = 0x42534843; // BSHC
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bin";
+
+    private final File mDir;
+    private final int mMaxChunks;
+    private final Writer mWriter;
+
+    @GuardedBy("this")
+    private final ArrayList<Chunk> mChunks = new ArrayList<>();
+    @GuardedBy("this")
+    private int mNextId;
+
+    /** Writes chunk files, normally asynchronously. */
+    public interface Writer {
+        void post(Runnable r);
+    }
+
+    public BatteryStatsHistoryChunks(File dir, int maxChunks, Writer writer) {
+        mDir = dir;
+        mMaxChunks = maxChunks;
+        mWriter = writer;
+    }
+
+    /** Indexes the chunk files that are already on disk. */
+    public synchronized void load() {
+        mChunks.clear();
+        mNextId = 0;
+        final File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final ArrayList<Chunk> chunks = new ArrayList<>(files.length);
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            final int id;
+            try {
+                id = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                file.delete();
+                continue;
+            }
+            final Chunk chunk = readHeader(id, new AtomicFile(file));
+            if (chunk == null) {
+                Slog.w(TAG, "Dropping unreadable history chunk " + file);
+                new AtomicFile(file).delete();
+                continue;
+            }
+            chunks.add(chunk);
+        }
+        chunks.sort((a, b) -> Integer.compare(a.id, b.id));
+        mChunks.addAll(chunks);
+        if (!mChunks.isEmpty()) {
+            mNextId = mChunks.get(mChunks.size() - 1).id + 1;
+        }
+    }
+
+    /**
+     * Moves the contents of {@code buffer} into a new chunk.
+     *
+     * @param endTime history time at which the chunk ends; later than the time of the last
+     *                record in the buffer
+     */
+    public void add(Parcel buffer, long endTime) {
+        final Chunk chunk;
+        synchronized (this) {
+            chunk = new Chunk(mNextId++, endTime, buffer.marshall());
+            mChunks.add(chunk);
+            while (mChunks.size() > mMaxChunks) {
+                final Chunk oldest = mChunks.remove(0);
+                oldest.deleted = true;
+                mWriter.post(() -> new AtomicFile(getFile(oldest.id)).delete());
+            }
+        }
+        mWriter.post(() -> write(chunk));
+    }
+
+    public synchronized int size() {
+        return mChunks.size();
+    }
+
+    public synchronized long getEndTime(int index) {
+        return mChunks.get(index).endTime;
+    }
+
+    /** Total size of the history data held in chunks, before compression. */
+    public synchronized long getRawSize() {
+        long size = 0;
+        for (int i = mChunks.size() - 1; i >= 0; i--) {
+            size += mChunks.get(i).rawSize;
+        }
+        return size;
+    }
+
+    /**
+     * Replaces the contents of {@code out} with the history data of the chunk at {@code index}.
+     *
+     * @return false if the chunk could not be read.
+     */
+    public boolean read(int index, Parcel out) {
+        final Chunk chunk;
+        final byte[] pending;
+        synchronized (this) {
+            chunk = mChunks.get(index);
+            pending = chunk.pendingData;
+        }
+        byte[] data = pending;
+        if (data == null) {
+            data = readData(chunk);
+            if (data == null) {
+                return false;
+            }
+        }
+        out.unmarshall(data, 0, data.length);
+        out.setDataPosition(0);
+        return true;
+    }
+
+    /**
+     * Deletes the chunks that end after {@code time}. Used after restoring the history buffer
+     * from disk, to drop chunks that were written after the buffer was last saved and whose
+     * records are therefore still part of the restored buffer.
+     */
+    public void removeAfter(long time) {
+        synchronized (this) {
+            while (!mChunks.isEmpty() && mChunks.get(mChunks.size() - 1).endTime > time) {
+                final Chunk chunk = mChunks.remove(mChunks.size() - 1);
+                chunk.deleted = true;
+                mWriter.post(() -> new AtomicFile(getFile(chunk.id)).delete());
+            }
+            mNextId = mChunks.isEmpty() ? 0 : mChunks.get(mChunks.size() - 1).id + 1;
+        }
+    }
+
+    /** Deletes all chunks. */
+    public void clear() {
+        synchronized (this) {
+            for (int i = mChunks.size() - 1; i >= 0; i--) {
+                final Chunk chunk = mChunks.get(i);
+                chunk.deleted = true;
+                mWriter.post(() -> new AtomicFile(getFile(chunk.id)).delete());
+            }
+            mChunks.clear();
+            mNextId = 0;
+        }
+    }
+
+    public synchronized void dump(PrintWriter pw, String prefix) {
+        pw.print(prefix); pw.print("History chunks: "); pw.print(mChunks.size());
+        pw.print(" of max "); pw.print(mMaxChunks);
+        pw.print(", "); pw.print(getRawSize()); pw.println(" bytes uncompressed");
+    }
+
+    @VisibleForTesting
+    File getFile(int id) {
+        return new File(mDir, id + SUFFIX);
+    }
+
+    private void write(Chunk chunk) {
+        final byte[] data;
+        synchronized (this) {
+            data = chunk.pendingData;
+            if (data == null || chunk.deleted) {
+                return;
+            }
+        }
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Slog.w(TAG, "Unable to create " + mDir);
+            return;
+        }
+        final AtomicFile file = new AtomicFile(getFile(chunk.id));
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            final DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(chunk.endTime);
+            out.writeInt(data.length);
+            out.flush();
+            final DeflaterOutputStream zout = new DeflaterOutputStream(fos);
+            zout.write(data);
+            zout.finish();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Slog.w(TAG, "Error writing history chunk " + chunk.id, e);
+            file.failWrite(fos);
+            return;
+        }
+        synchronized (this) {
+            // The data can be read back from disk from now on.
+            chunk.pendingData = null;
+            if (chunk.deleted) {
+                file.delete();
+            }
+        }
+    }
+
+    private Chunk readHeader(int id, AtomicFile file) {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final long endTime = in.readLong();
+            final int rawSize = in.readInt();
+            final Chunk chunk = new Chunk(id, endTime, null);
+            chunk.rawSize = rawSize;
+            return chunk;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] readData(Chunk chunk) {
+        final AtomicFile file = new AtomicFile(getFile(chunk.id));
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            in.readLong();
+            final int rawSize = in.readInt();
+            final byte[] data = new byte[rawSize];
+            final InputStream zin = new InflaterInputStream(in);
+            int pos = 0;
+            while (pos < rawSize) {
+                final int read = zin.read(data, pos, rawSize - pos);
+                if (read < 0) {
+                    break;
+                }
+                pos += read;
+            }
+            if (pos != rawSize) {
+                Slog.w(TAG, "History chunk " + chunk.id + " is truncated");
+                return Arrays.copyOf(data, pos & ~3);
+            }
+            return data;
+        } catch (IOException e) {
+            Slog.w(TAG, "Error reading history chunk " + chunk.id, e);
+            return null;
+        }
+    }
+
+    private static final class Chunk {
+        final int id;
+        final long endTime;
+        int rawSize;
+        // Chunk data until it has been written to disk.
+        byte[] pendingData;
+        boolean deleted;
+
+        Chunk(int id, long endTime, byte[] pendingData) {
+            this.id = id;
+            this.endTime = endTime;
+            this.pendingData = pendingData;
+            this.rawSize = pendingData != null ? pendingData.length : 0;
+        }
+    }
+}
@@ -118,7 +118,7 @@ public class BatteryStatsImpl extends BatteryStats {
     private static final int MAGIC = 0xBA757475; // 'BATSTATS'
 
     // Current on-disk Parcel version
-    private static final int VERSION = 159 + (USE_OLD_HISTORY ? 1000 : 0);
+    private static final int VERSION = 160 + (USE_OLD_HISTORY ? 1000 : 0);
 
     // Maximum number of items we will record in the history.
     private static final int MAX_HISTORY_ITEMS = 2000;
@@ -300,11 +300,22 @@ public class BatteryStatsImpl extends BatteryStats {
 
     static final int MAX_HISTORY_BUFFER = 256*1024; // 256KB
     static final int MAX_MAX_HISTORY_BUFFER = 320*1024; // 320KB
+    // Number of full history buffers kept on disk, compressed, once the buffer fills up.
+    static final int MAX_HISTORY_CHUNKS = 16;
     final Parcel mHistoryBuffer = Parcel.obtain();
+    // Older history, when this instance has a place to store it.
+    final BatteryStatsHistoryChunks mHistoryChunks;
+    // Chunk being read while iterating; mHistoryBuffer once all chunks have been read.
+    private Parcel mReadHistoryBuffer;
+    private Parcel mReadHistoryChunkBuffer;
+    private int mReadHistoryChunk;
+    // History time at which the history restored from disk was saved.
+    private long mRestoredHistoryTime;
     final HistoryItem mHistoryLastWritten = new HistoryItem();
     final HistoryItem mHistoryLastLastWritten = new HistoryItem();
     final HistoryItem mHistoryReadTmp = new HistoryItem();
     final HistoryItem mHistoryAddTmp = new HistoryItem();
+    final HistoryItem mHistoryChunkStartTmp = new HistoryItem();
     final HashMap<HistoryTag, Integer> mHistoryTagPool = new HashMap<>();
     String[] mReadHistoryStrings;
     int[] mReadHistoryUids;
@@ -624,8 +635,14 @@ public class BatteryStatsImpl extends BatteryStats {
     }
 
     public BatteryStatsImpl(Clocks clocks) {
+        this(clocks, null);
+    }
+
+    @VisibleForTesting
+    BatteryStatsImpl(Clocks clocks, BatteryStatsHistoryChunks historyChunks) {
         init(clocks);
         mFile = null;
+        mHistoryChunks = historyChunks;
         mCheckinFile = null;
         mDailyFile = null;
         mHandler = null;
@@ -2622,11 +2639,21 @@ public class BatteryStatsImpl extends BatteryStats {
         return kmt;
     }
 
+    // History tag indexes are 16 bits: 0xffff means no tag, and once the pool holds
+    // HISTORY_TAG_INLINE tags, new tags are written in full after their index instead.
+    // The pool is only emptied when the history is reset, which may take a long time now
+    // that full history buffers are moved to chunks.
+    private static final int HISTORY_TAG_NONE = 0xffff;
+    private static final int HISTORY_TAG_INLINE = 0xfffe;
+
     private int writeHistoryTag(HistoryTag tag) {
         Integer idxObj = mHistoryTagPool.get(tag);
         int idx;
         if (idxObj != null) {
             idx = idxObj;
+        } else if (mNextHistoryTagIdx >= HISTORY_TAG_INLINE) {
+            idx = HISTORY_TAG_INLINE;
+            tag.poolIdx = -1;
         } else {
             idx = mNextHistoryTagIdx;
             HistoryTag key = new HistoryTag();
@@ -2639,7 +2666,17 @@ public class BatteryStatsImpl extends BatteryStats {
         return idx;
     }
 
-    private void readHistoryTag(int index, HistoryTag tag) {
+    private static void writeInlineHistoryTag(Parcel dest, int index, HistoryTag tag) {
+        if (index == HISTORY_TAG_INLINE) {
+            tag.writeToParcel(dest, 0);
+        }
+    }
+
+    private void readHistoryTag(Parcel src, int index, HistoryTag tag) {
+        if (index == HISTORY_TAG_INLINE) {
+            tag.readFromParcel(src);
+            return;
+        }
         tag.string = mReadHistoryStrings[index];
         tag.uid = mReadHistoryUids[index];
         tag.poolIdx = index;
@@ -2853,21 +2890,24 @@ public class BatteryStatsImpl extends BatteryStats {
                 if (DEBUG) Slog.i(TAG, "WRITE DELTA: wakelockTag=#" + cur.wakelockTag.poolIdx
                     + " " + cur.wakelockTag.uid + ":" + cur.wakelockTag.string);
             } else {
-                wakeLockIndex = 0xffff;
+                wakeLockIndex = HISTORY_TAG_NONE;
             }
             if (cur.wakeReasonTag != null) {
                 wakeReasonIndex = writeHistoryTag(cur.wakeReasonTag);
                 if (DEBUG) Slog.i(TAG, "WRITE DELTA: wakeReasonTag=#" + cur.wakeReasonTag.poolIdx
                     + " " + cur.wakeReasonTag.uid + ":" + cur.wakeReasonTag.string);
             } else {
-                wakeReasonIndex = 0xffff;
+                wakeReasonIndex = HISTORY_TAG_NONE;
             }
             dest.writeInt((wakeReasonIndex<<16) | wakeLockIndex);
+            writeInlineHistoryTag(dest, wakeLockIndex, cur.wakelockTag);
+            writeInlineHistoryTag(dest, wakeReasonIndex, cur.wakeReasonTag);
         }
         if (cur.eventCode != HistoryItem.EVENT_NONE) {
             int index = writeHistoryTag(cur.eventTag);
             int codeAndIndex = (cur.eventCode&0xffff) | (index<<16);
             dest.writeInt(codeAndIndex);
+            writeInlineHistoryTag(dest, index, cur.eventTag);
             if (DEBUG) Slog.i(TAG, "WRITE DELTA: event=" + cur.eventCode + " tag=#"
                     + cur.eventTag.poolIdx + " " + cur.eventTag.uid + ":"
                     + cur.eventTag.string);
@@ -3101,17 +3141,17 @@ public class BatteryStatsImpl extends BatteryStats {
             int indexes = src.readInt();
             int wakeLockIndex = indexes&0xffff;
             int wakeReasonIndex = (indexes>>16)&0xffff;
-            if (wakeLockIndex != 0xffff) {
+            if (wakeLockIndex != HISTORY_TAG_NONE) {
                 cur.wakelockTag = cur.localWakelockTag;
-                readHistoryTag(wakeLockIndex, cur.wakelockTag);
+                readHistoryTag(src, wakeLockIndex, cur.wakelockTag);
                 if (DEBUG) Slog.i(TAG, "READ DELTA: wakelockTag=#" + cur.wakelockTag.poolIdx
                     + " " + cur.wakelockTag.uid + ":" + cur.wakelockTag.string);
             } else {
                 cur.wakelockTag = null;
             }
-            if (wakeReasonIndex != 0xffff) {
+            if (wakeReasonIndex != HISTORY_TAG_NONE) {
                 cur.wakeReasonTag = cur.localWakeReasonTag;
-                readHistoryTag(wakeReasonIndex, cur.wakeReasonTag);
+                readHistoryTag(src, wakeReasonIndex, cur.wakeReasonTag);
                 if (DEBUG) Slog.i(TAG, "READ DELTA: wakeReasonTag=#" + cur.wakeReasonTag.poolIdx
                     + " " + cur.wakeReasonTag.uid + ":" + cur.wakeReasonTag.string);
             } else {
@@ -3128,7 +3168,7 @@ public class BatteryStatsImpl extends BatteryStats {
             final int codeAndIndex = src.readInt();
             cur.eventCode = (codeAndIndex&0xffff);
             final int index = ((codeAndIndex>>16)&0xffff);
-            readHistoryTag(index, cur.eventTag);
+            readHistoryTag(src, index, cur.eventTag);
             cur.numReadInts += 1;
             if (DEBUG) Slog.i(TAG, "READ DELTA: event=" + cur.eventCode + " tag=#"
                     + cur.eventTag.poolIdx + " " + cur.eventTag.uid + ":"
@@ -3218,7 +3258,13 @@ public class BatteryStatsImpl extends BatteryStats {
         }
 
         boolean recordResetDueToOverflow = false;
-        final int dataSize = mHistoryBuffer.dataSize();
+        int dataSize = mHistoryBuffer.dataSize();
+        if (mHistoryChunks != null && dataSize >= MAX_HISTORY_BUFFER) {
+            // Move the full buffer to disk and keep recording everything, instead of
+            // falling back to the overflow handling below.
+            startNextHistoryChunkLocked(elapsedRealtimeMs, uptimeMs, cur);
+            dataSize = mHistoryBuffer.dataSize();
+        }
         if (dataSize >= MAX_MAX_HISTORY_BUFFER*3) {
             // Clients can't deal with history buffers this large. This only
             // really happens when the device is on charger and interacted with
@@ -3289,6 +3335,27 @@ public class BatteryStatsImpl extends BatteryStats {
         addHistoryBufferLocked(elapsedRealtimeMs, uptimeMs, HistoryItem.CMD_UPDATE, cur);
     }
 
+    private void startNextHistoryChunkLocked(long elapsedRealtimeMs, long uptimeMs,
+            HistoryItem cur) {
+        if (DEBUG_HISTORY) Slog.i(TAG, "Moving " + mHistoryBuffer.dataSize()
+                + " bytes of history to chunk " + mHistoryChunks.size());
+        mHistoryChunks.add(mHistoryBuffer, mHistoryBaseTime + elapsedRealtimeMs);
+        mHistoryBuffer.setDataSize(0);
+        mHistoryBuffer.setDataPosition(0);
+        mHistoryBufferLastPos = -1;
+        // Start the new chunk with an absolute record, so that it can be decoded on its own.
+        // The tags and event of cur are left for the update record that follows: they are not
+        // printed for a current time record.
+        mHistoryChunkStartTmp.setTo(cur);
+        mHistoryChunkStartTmp.wakelockTag = null;
+        mHistoryChunkStartTmp.wakeReasonTag = null;
+        mHistoryChunkStartTmp.eventCode = HistoryItem.EVENT_NONE;
+        mHistoryChunkStartTmp.eventTag = null;
+        mHistoryChunkStartTmp.currentTime = System.currentTimeMillis();
+        addHistoryBufferLocked(elapsedRealtimeMs, uptimeMs, HistoryItem.CMD_CURRENT_TIME,
+                mHistoryChunkStartTmp);
+    }
+
     private void addHistoryBufferLocked(long elapsedRealtimeMs, long uptimeMs, byte cmd,
             HistoryItem cur) {
         if (mIteratingHistory) {
@@ -3447,6 +3514,9 @@ public class BatteryStatsImpl extends BatteryStats {
         mHistoryBuffer.setDataSize(0);
         mHistoryBuffer.setDataPosition(0);
         mHistoryBuffer.setDataCapacity(MAX_HISTORY_BUFFER / 2);
+        if (mHistoryChunks != null) {
+            mHistoryChunks.clear();
+        }
         mHistoryLastLastWritten.clear();
         mHistoryLastWritten.clear();
         mHistoryTagPool.clear();
@@ -8606,8 +8676,12 @@ public class BatteryStatsImpl extends BatteryStats {
         if (systemDir != null) {
             mFile = new JournaledFile(new File(systemDir, "batterystats.bin"),
                     new File(systemDir, "batterystats.bin.tmp"));
+            mHistoryChunks = new BatteryStatsHistoryChunks(
+                    new File(systemDir, "battery-history"), MAX_HISTORY_CHUNKS,
+                    BackgroundThread.getHandler()::post);
         } else {
             mFile = null;
+            mHistoryChunks = null;
         }
         mCheckinFile = new AtomicFile(new File(systemDir, "batterystats-checkin.bin"));
         mDailyFile = new AtomicFile(new File(systemDir, "batterystats-daily.xml"));
@@ -8697,6 +8771,7 @@ public class BatteryStatsImpl extends BatteryStats {
     public BatteryStatsImpl(Clocks clocks, Parcel p) {
         init(clocks);
         mFile = null;
+        mHistoryChunks = null;
         mCheckinFile = null;
         mDailyFile = null;
         mHandler = null;
@@ -9122,12 +9197,27 @@ public class BatteryStatsImpl extends BatteryStats {
 
     @Override
     public boolean startIteratingHistoryLocked() {
+        return startIteratingHistoryLocked(-1);
+    }
+
+    @Override
+    public boolean startIteratingHistoryLocked(long startTime) {
         if (DEBUG_HISTORY) Slog.i(TAG, "ITERATING: buff size=" + mHistoryBuffer.dataSize()
                 + " pos=" + mHistoryBuffer.dataPosition());
-        if (mHistoryBuffer.dataSize() <= 0) {
+        mReadHistoryChunk = 0;
+        if (mHistoryChunks != null) {
+            // Chunks that end before the requested start can't contain anything of interest;
+            // don't bother reading them.
+            final int numChunks = mHistoryChunks.size();
+            while (mReadHistoryChunk < numChunks
+                    && mHistoryChunks.getEndTime(mReadHistoryChunk) <= startTime) {
+                mReadHistoryChunk++;
+            }
+        }
+        mReadHistoryBuffer = null;
+        if (!openNextHistoryBufferLocked()) {
             return false;
         }
-        mHistoryBuffer.setDataPosition(0);
         mReadOverflow = false;
         mIteratingHistory = true;
         mReadHistoryStrings = new String[mHistoryTagPool.size()];
@@ -9165,20 +9255,48 @@ public class BatteryStatsImpl extends BatteryStats {
         return mReadHistoryUids[index];
     }
 
+    /**
+     * Moves on to the next chunk of history that has data, or to the history buffer once all
+     * chunks have been read.
+     */
+    private boolean openNextHistoryBufferLocked() {
+        if (mReadHistoryBuffer != mHistoryBuffer && mHistoryChunks != null) {
+            while (mReadHistoryChunk < mHistoryChunks.size()) {
+                if (mReadHistoryChunkBuffer == null) {
+                    mReadHistoryChunkBuffer = Parcel.obtain();
+                }
+                if (mHistoryChunks.read(mReadHistoryChunk++, mReadHistoryChunkBuffer)
+                        && mReadHistoryChunkBuffer.dataSize() > 0) {
+                    mReadHistoryBuffer = mReadHistoryChunkBuffer;
+                    return true;
+                }
+            }
+        }
+        if (mReadHistoryBuffer == mHistoryBuffer) {
+            return false;
+        }
+        mReadHistoryBuffer = mHistoryBuffer;
+        mHistoryBuffer.setDataPosition(0);
+        return mHistoryBuffer.dataSize() > 0;
+    }
+
     @Override
     public boolean getNextHistoryLocked(HistoryItem out) {
-        final int pos = mHistoryBuffer.dataPosition();
+        int pos = mReadHistoryBuffer.dataPosition();
+        if (pos >= mReadHistoryBuffer.dataSize()) {
+            if (!openNextHistoryBufferLocked()) {
+                return false;
+            }
+            pos = 0;
+        }
         if (pos == 0) {
+            // Each chunk starts with an absolute record.
             out.clear();
         }
-        boolean end = pos >= mHistoryBuffer.dataSize();
-        if (end) {
-            return false;
-        }
 
         final long lastRealtime = out.time;
         final long lastWalltime = out.currentTime;
-        readHistoryDelta(mHistoryBuffer, out);
+        readHistoryDelta(mReadHistoryBuffer, out);
         if (out.cmd != HistoryItem.CMD_CURRENT_TIME
                 && out.cmd != HistoryItem.CMD_RESET && lastWalltime != 0) {
             out.currentTime = lastWalltime + (out.time - lastRealtime);
@@ -9191,6 +9309,12 @@ public class BatteryStatsImpl extends BatteryStats {
         mIteratingHistory = false;
         mHistoryBuffer.setDataPosition(mHistoryBuffer.dataSize());
         mReadHistoryStrings = null;
+        mReadHistoryBuffer = null;
+        if (mReadHistoryChunkBuffer != null) {
+            // Don't hold on to a whole chunk between dumps.
+            mReadHistoryChunkBuffer.recycle();
+            mReadHistoryChunkBuffer = null;
+        }
     }
 
     @Override
@@ -11143,9 +11267,16 @@ public class BatteryStatsImpl extends BatteryStats {
 
         mUidStats.clear();
 
+        if (mHistoryChunks != null) {
+            mHistoryChunks.load();
+        }
+
         try {
             File file = mFile.chooseForRead();
             if (!file.exists()) {
+                if (mHistoryChunks != null) {
+                    mHistoryChunks.clear();
+                }
                 return;
             }
             FileInputStream stream = new FileInputStream(file);
@@ -11164,6 +11295,17 @@ public class BatteryStatsImpl extends BatteryStats {
 
         mEndPlatformVersion = Build.ID;
 
+        if (mHistoryChunks != null) {
+            // Chunks only make sense together with the history buffer and tag pool they were
+            // split from. Chunks that were written after the summary was last saved still
+            // have their records in the restored buffer.
+            if (mHistoryBuffer.dataSize() <= 0) {
+                mHistoryChunks.clear();
+            } else {
+                mHistoryChunks.removeAfter(mRestoredHistoryTime);
+            }
+        }
+
         if (mHistoryBuffer.dataPosition() > 0) {
             mRecordingHistory = true;
             final long elapsedRealtime = mClocks.elapsedRealtime();
@@ -11184,6 +11326,7 @@ public class BatteryStatsImpl extends BatteryStats {
 
     void readHistory(Parcel in, boolean andOldHistory) throws ParcelFormatException {
         final long historyBaseTime = in.readLong();
+        mRestoredHistoryTime = historyBaseTime;
 
         mHistoryBuffer.setDataSize(0);
         mHistoryBuffer.setDataPosition(0);
@@ -12567,6 +12710,9 @@ public class BatteryStatsImpl extends BatteryStats {
             mFlashlightOnTimer.logState(pr, "  ");
             pr.println("*** Camera timer:");
             mCameraOnTimer.logState(pr, "  ");
+            if (mHistoryChunks != null) {
+                mHistoryChunks.dump(pw, "*** ");
+            }
         }
         super.dumpLocked(context, pw, flags, reqUid, histStart);
     }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.internal.view;
+
+import android.annotation.LayoutRes;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inflates layouts on a pool of background threads, and hands the inflated hierarchy to a
+ * listener on the thread of the {@link Looper} given at construction, normally the UI thread.
+ * Typical usage is:
+ * <pre><code>
+ *     new AsyncLayoutInflater(context).inflate(R.layout.item, parent,
+ *             (view, resid, parent) -> parent.addView(view));
+ * </code></pre>
+ * <p>
+ * The hierarchy is not attached to {@code parent}, which is only used to generate the layout
+ * params of the root view; it must be attached on the listener thread. Every inflation uses its
+ * own clone of the {@link LayoutInflater}, so several layouts can be inflated at the same time,
+ * and any factories set on the inflater must be safe to call from several threads.
+ * <p>
+ * Views that can't be constructed off the UI thread, typically because they create a
+ * {@link Handler} in their constructor, make the background inflation fail with a
+ * {@link RuntimeException}. That is logged, and the layout is inflated again on the listener
+ * thread; later requests for the same layout are inflated there directly.
+ * <p>
+ * Layouts are remembered by resource id alone, even though whether a layout can be inflated in
+ * the background may also depend on the theme or the factories of the inflater. Remembering
+ * too much is harmless: such layouts are still inflated correctly, only on the listener thread.
+ */
+public class AsyncLayoutInflater {
+    private static final String TAG = "AsyncLayoutInflater";
+
+    private static final Executor EXECUTOR = new InflationExecutor();
+
+    /** Layouts that could not be inflated in the background, with any theme. */
+    @GuardedBy("sUnsafeLayouts")
+    private static final SparseBooleanArray sUnsafeLayouts = new SparseBooleanArray();
+
+    private final LayoutInflater mInflater;
+    private final Handler mHandler;
+    private final Executor mExecutor;
+
+    public interface OnInflateFinishedListener {
+        /**
+         * Called on the listener thread with the inflated, detached hierarchy.
+         */
+        void onInflateFinished(View view, @LayoutRes int resid, @Nullable ViewGroup parent);
+    }
+
+    /**
+     * Creates an inflater that calls its listeners on the main thread of {@code context}.
+     */
+    public AsyncLayoutInflater(Context context) {
+        this(LayoutInflater.from(context), new Handler(context.getMainLooper()), EXECUTOR);
+    }
+
+    @VisibleForTesting
+    public AsyncLayoutInflater(LayoutInflater inflater, Handler handler, Executor executor) {
+        mInflater = inflater;
+        mHandler = handler;
+        mExecutor = executor;
+    }
+
+    /**
+     * Inflates {@code resid} in the background, then calls {@code listener} with the result.
+     */
+    public void inflate(@LayoutRes int resid, @Nullable ViewGroup parent,
+            OnInflateFinishedListener listener) {
+        if (isUnsafe(resid)) {
+            mHandler.post(() -> inflateOnHandler(resid, parent, listener));
+            return;
+        }
+        mExecutor.execute(() -> {
+            View view = null;
+            try {
+                view = mInflater.cloneInContext(mInflater.getContext())
+                        .inflate(resid, parent, false);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to inflate layout 0x" + Integer.toHexString(resid)
+                        + " in the background, inflating it on the UI thread instead", e);
+                synchronized (sUnsafeLayouts) {
+                    sUnsafeLayouts.put(resid, true);
+                }
+            }
+            if (view == null) {
+                mHandler.post(() -> inflateOnHandler(resid, parent, listener));
+            } else {
+                final View result = view;
+                mHandler.post(() -> listener.onInflateFinished(result, resid, parent));
+            }
+        });
+    }
+
+    private void inflateOnHandler(int resid, ViewGroup parent,
+            OnInflateFinishedListener listener) {
+        final View view = mInflater.inflate(resid, parent, false);
+        listener.onInflateFinished(view, resid, parent);
+    }
+
+    private static boolean isUnsafe(int resid) {
+        synchronized (sUnsafeLayouts) {
+            return sUnsafeLayouts.get(resid);
+        }
+    }
+
+    /**
+     * Forgets the layouts that could not be inflated in the background.
+     */
+    @VisibleForTesting
+    public static void resetUnsafeLayouts() {
+        synchronized (sUnsafeLayouts) {
+            sUnsafeLayouts.clear();
+        }
+    }
+
+    /**
+     * A fixed pool of background priority threads with an unbounded queue, so that requests are
+     * never rejected and don't compete with the UI thread.
+     */
+    private static class InflationExecutor implements Executor {
+        private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+        // Leave a core for the UI thread. A ThreadPoolExecutor with an unbounded queue never
+        // grows beyond its core size.
+        private static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+        private static final int KEEP_ALIVE_SECONDS = 30;
+
+        private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r) {
+                return new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "AsyncLayoutInflater #" + mCount.getAndIncrement());
+            }
+        };
+
+        private final ThreadPoolExecutor mExecutor;
+
+        private InflationExecutor() {
+            mExecutor = new ThreadPoolExecutor(
+                    POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), sThreadFactory);
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            mExecutor.execute(runnable);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 #include <errno.h>
 #include <inttypes.h>
+#include <string.h>
 #include <sys/stat.h>
 #include <sys/types.h>
 
@@ -30,6 +31,7 @@
 
 #include <utils/Log.h>
 #include <utils/misc.h>
+#include <utils/Mutex.h>
 #include <utils/Vector.h>
 
 namespace android {
@@ -63,6 +65,57 @@ struct stats_line {
     int64_t txPackets;
 };
 
+// Interface names seen by previous reads. Handing out the same String instances on every read
+// avoids allocating a String per line, and lets NetworkStats match interface names by identity
+// when comparing snapshots. There are only a handful of interfaces, so a short list will do;
+// anything beyond it gets a fresh String.
+static const int kMaxCachedIfaces = 64;
+
+struct cached_iface {
+    char name[32];
+    jstring string;  // global ref
+};
+
+static Mutex gIfaceCacheLock;
+static cached_iface gIfaceCache[kMaxCachedIfaces];
+static int gIfaceCacheSize = 0;
+
+static bool set_iface_string(JNIEnv* env, jobjectArray array, int index, const char* iface)
+{
+    {
+        Mutex::Autolock _l(gIfaceCacheLock);
+        for (int i = 0; i < gIfaceCacheSize; i++) {
+            if (strcmp(gIfaceCache[i].name, iface) == 0) {
+                env->SetObjectArrayElement(array, index, gIfaceCache[i].string);
+                return true;
+            }
+        }
+    }
+
+    ScopedLocalRef<jstring> ifaceString(env, env->NewStringUTF(iface));
+    if (ifaceString.get() == NULL) {
+        return false;
+    }
+    env->SetObjectArrayElement(array, index, ifaceString.get());
+
+    Mutex::Autolock _l(gIfaceCacheLock);
+    if (gIfaceCacheSize < kMaxCachedIfaces) {
+        for (int i = 0; i < gIfaceCacheSize; i++) {
+            if (strcmp(gIfaceCache[i].name, iface) == 0) {
+                // Another thread added it in the meantime.
+                return true;
+            }
+        }
+        cached_iface& entry = gIfaceCache[gIfaceCacheSize];
+        strlcpy(entry.name, iface, sizeof(entry.name));
+        entry.string = (jstring) env->NewGlobalRef(ifaceString.get());
+        if (entry.string != NULL) {
+            gIfaceCacheSize++;
+        }
+    }
+    return true;
+}
+
 static jobjectArray get_string_array(JNIEnv* env, jobject obj, jfieldID field, int size, bool grow)
 {
     if (!grow) {
@@ -263,8 +316,9 @@ static int readNetworkStatsDetail(JNIEnv* env, jclass clazz, jobject stats,
     if (operations.get() == NULL) return -1;
 
     for (int i = 0; i < size; i++) {
-        ScopedLocalRef<jstring> ifaceString(env, env->NewStringUTF(lines[i].iface));
-        env->SetObjectArrayElement(iface.get(), i, ifaceString.get());
+        if (!set_iface_string(env, iface.get(), i, lines[i].iface)) {
+            return -1;
+        }
 
         uid[i] = lines[i].uid;
         set[i] = lines[i].set;
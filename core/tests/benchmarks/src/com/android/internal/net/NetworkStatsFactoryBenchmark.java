@@ -20,21 +20,64 @@ import android.net.NetworkStats;
 import android.os.SystemClock;
 import com.google.caliper.AfterExperiment;
 import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 
 public class NetworkStatsFactoryBenchmark {
+    private static final String[] IFACES = { "wlan0", "rmnet_data0", "v4-rmnet_data0" };
+
     private File mStats;
 
-    // TODO: consider staging stats file with different number of rows
+    @Param({"1000", "10000"})
+    private int mRows;
+    private File mStagedStats;
+    private NetworkStats mSnapshot;
+    private NetworkStats mSpare;
+    private NetworkStats mDelta;
 
     @BeforeExperiment
-    protected void setUp() {
+    protected void setUp() throws Exception {
         mStats = new File("/proc/net/xt_qtaguid/stats");
+        mStagedStats = File.createTempFile("xt_qtaguid", null);
+        writeStagedStats(mStagedStats, mRows);
+        mSnapshot = new NetworkStats(SystemClock.elapsedRealtime(), -1);
+        NetworkStatsFactory.nativeReadNetworkStatsDetail(mSnapshot,
+                mStagedStats.getAbsolutePath(), NetworkStats.UID_ALL, null, NetworkStats.TAG_ALL);
+        mSpare = new NetworkStats(SystemClock.elapsedRealtime(), -1);
     }
 
     @AfterExperiment
     protected void tearDown() {
         mStats = null;
+        mStagedStats.delete();
+        mStagedStats = null;
+    }
+
+    /**
+     * Writes a file in the xt_qtaguid stats format with the given number of rows, spread over
+     * a few interfaces, uids, sets and tags like on a busy device.
+     */
+    private static void writeStagedStats(File file, int rows) throws IOException {
+        try (FileWriter out = new FileWriter(file)) {
+            out.write("idx iface acct_tag_hex uid_tag_int cnt_set rx_bytes rx_packets tx_bytes"
+                    + " tx_packets rx_tcp_bytes rx_tcp_packets rx_udp_bytes rx_udp_packets"
+                    + " rx_other_bytes rx_other_packets tx_tcp_bytes tx_tcp_packets tx_udp_bytes"
+                    + " tx_udp_packets tx_other_bytes tx_other_packets\n");
+            for (int i = 0; i < rows; i++) {
+                final String iface = IFACES[i % IFACES.length];
+                final int uid = 10000 + (i / 8);
+                final String tag = (i % 4 == 0) ? "0x0" : "0x" + Long.toHexString(
+                        ((long) (i % 4) << 32) | uid);
+                final int set = (i / 4) % 2;
+                final long rxBytes = 1000L * i;
+                final long txBytes = 500L * i;
+                out.write((i + 2) + " " + iface + " " + tag + " " + uid + " " + set + " "
+                        + rxBytes + " " + i + " " + txBytes + " " + i
+                        + " 0 0 0 0 0 0 0 0 0 0 0 0\n");
+            }
+        }
     }
 
     public void timeReadNetworkStatsDetailJava(int reps) throws Exception {
@@ -56,4 +99,38 @@ public class NetworkStatsFactoryBenchmark {
                     new String[0], 999);
         }
     }
+
+    public void timeReadStagedNative(int reps) {
+        for (int i = 0; i < reps; i++) {
+            final NetworkStats stats = new NetworkStats(SystemClock.elapsedRealtime(), -1);
+            NetworkStatsFactory.nativeReadNetworkStatsDetail(stats,
+                    mStagedStats.getAbsolutePath(), NetworkStats.UID_ALL, null,
+                    NetworkStats.TAG_ALL);
+        }
+    }
+
+    /**
+     * Reads into a reused {@link NetworkStats}, the way consecutive polls can once the arrays
+     * are big enough.
+     */
+    public void timeReadStagedNativeRecycled(int reps) {
+        for (int i = 0; i < reps; i++) {
+            mSpare.setElapsedRealtime(SystemClock.elapsedRealtime());
+            NetworkStatsFactory.nativeReadNetworkStatsDetail(mSpare,
+                    mStagedStats.getAbsolutePath(), NetworkStats.UID_ALL, null,
+                    NetworkStats.TAG_ALL);
+        }
+    }
+
+    public void timeSubtract(int reps) {
+        for (int i = 0; i < reps; i++) {
+            NetworkStats.subtract(mSnapshot, mSnapshot, null, null);
+        }
+    }
+
+    public void timeSubtractRecycled(int reps) {
+        for (int i = 0; i < reps; i++) {
+            mDelta = NetworkStats.subtract(mSnapshot, mSnapshot, null, null, mDelta);
+        }
+    }
 }
@@ -16,9 +16,153 @@
 
 package android.text;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Typeface;
+import android.text.style.CharacterStyle;
+import android.text.style.MetricAffectingSpan;
+import android.text.style.StyleSpan;
+import android.text.style.UnderlineSpan;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
 public class SpannableStringBuilderTest extends SpannableTest {
 
     protected Spannable newSpannableWithText(String text) {
         return new SpannableStringBuilder(text);
     }
+
+    @Test
+    public void testSpanSet_sameOrderAsGetSpans() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdefghij");
+        final Object[] spans = new Object[8];
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = i % 2 == 0 ? new UnderlineSpan() : new StyleSpan(Typeface.BOLD);
+            // Set in the reverse order of their position, overlapping each other.
+            builder.setSpan(spans[i], spans.length - 1 - i, 10 - i / 2,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+
+        assertSpanSetMatchesGetSpans(builder, 0, builder.length(), Object.class);
+        assertSpanSetMatchesGetSpans(builder, 2, 5, Object.class);
+        assertSpanSetMatchesGetSpans(builder, 3, 3, Object.class);
+        assertSpanSetMatchesGetSpans(builder, 0, builder.length(), CharacterStyle.class);
+        assertSpanSetMatchesGetSpans(builder, 0, builder.length(), MetricAffectingSpan.class);
+        assertSpanSetMatchesGetSpans(builder, 0, builder.length(), UnderlineSpan.class);
+    }
+
+    @Test
+    public void testSpanSet_priorityFlags() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdef");
+        final Object low = new Object();
+        final Object high = new Object();
+        final Object middle = new Object();
+        builder.setSpan(low, 0, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.setSpan(high, 1, 4,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | (2 << Spanned.SPAN_PRIORITY_SHIFT));
+        builder.setSpan(middle, 2, 5,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | (1 << Spanned.SPAN_PRIORITY_SHIFT));
+
+        final SpanSet<Object> set = assertSpanSetMatchesGetSpans(builder, 0, 6, Object.class);
+        assertEquals(3, set.numberOfSpans);
+        assertSame(high, set.spans[0]);
+        assertSame(middle, set.spans[1]);
+        assertSame(low, set.spans[2]);
+    }
+
+    @Test
+    public void testSpanSet_skipsEmptySpans() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdef");
+        final Object empty = new Object();
+        final Object nonEmpty = new Object();
+        builder.setSpan(empty, 2, 2, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        builder.setSpan(nonEmpty, 1, 3, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        final SpanSet<Object> set = assertSpanSetMatchesGetSpans(builder, 0, 6, Object.class);
+        assertEquals(1, set.numberOfSpans);
+        assertSame(nonEmpty, set.spans[0]);
+    }
+
+    @Test
+    public void testSpanSet_spansAfterGap() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdefghij");
+        final Object before = new Object();
+        final Object across = new Object();
+        final Object after = new Object();
+        builder.setSpan(before, 0, 2, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.setSpan(across, 3, 7, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.setSpan(after, 6, 9, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        // Leaves the gap of the buffer in the middle of the text.
+        builder.insert(5, "xyz");
+
+        final SpanSet<Object> set =
+                assertSpanSetMatchesGetSpans(builder, 0, builder.length(), Object.class);
+        assertEquals(3, set.numberOfSpans);
+        assertSpanSetMatchesGetSpans(builder, 7, builder.length(), Object.class);
+        assertSpanSetMatchesGetSpans(builder, 0, 4, Object.class);
+    }
+
+    @Test
+    public void testSpanSet_reinitClearsPreviousSpans() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdef");
+        builder.setSpan(new Object(), 0, 2, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.setSpan(new Object(), 4, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        final SpanSet<Object> set = new SpanSet<>(Object.class);
+
+        set.init(builder, 0, 6);
+        assertEquals(2, set.numberOfSpans);
+        set.init(builder, 0, 3);
+
+        assertEquals(1, set.numberOfSpans);
+        assertNull(set.spans[1]);
+    }
+
+    @Test
+    public void testSpanSet_subclass_usesGetSpans() {
+        final ArrayList<Class<?>> queriedTypes = new ArrayList<>();
+        final SpannableStringBuilder builder = new SpannableStringBuilder("abcdef") {
+            @Override
+            public <T> T[] getSpans(int queryStart, int queryEnd, Class<T> kind) {
+                queriedTypes.add(kind);
+                return super.getSpans(queryStart, queryEnd, kind);
+            }
+        };
+        builder.setSpan(new UnderlineSpan(), 1, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        final SpanSet<Object> set =
+                assertSpanSetMatchesGetSpans(builder, 0, 6, CharacterStyle.class);
+
+        assertEquals(1, set.numberOfSpans);
+        // Once by SpanSet, once by the comparison.
+        assertEquals(Arrays.asList(CharacterStyle.class, CharacterStyle.class), queriedTypes);
+    }
+
+    private static SpanSet<Object> assertSpanSetMatchesGetSpans(SpannableStringBuilder builder,
+            int start, int end, Class<?> kind) {
+        final SpanSet<Object> set = new SpanSet<>(kind);
+        set.init(builder, start, end);
+
+        final ArrayList<Object> expected = new ArrayList<>();
+        for (Object span : builder.getSpans(start, end, kind)) {
+            if (builder.getSpanStart(span) != builder.getSpanEnd(span)) {
+                expected.add(span);
+            }
+        }
+        assertEquals(expected.size(), set.numberOfSpans);
+        for (int i = 0; i < set.numberOfSpans; i++) {
+            final Object span = expected.get(i);
+            assertSame(span, set.spans[i]);
+            assertEquals(builder.getSpanStart(span), set.spanStarts[i]);
+            assertEquals(builder.getSpanEnd(span), set.spanEnds[i]);
+            assertEquals(builder.getSpanFlags(span), set.spanFlags[i]);
+            assertTrue(kind.isInstance(set.spans[i]));
+        }
+        return set;
+    }
 }
@@ -18,6 +18,7 @@ package android.text;
 
 import static android.text.Layout.Alignment.ALIGN_NORMAL;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import android.graphics.Paint.FontMetricsInt;
 import android.support.test.filters.SmallTest;
@@ -410,4 +411,36 @@ public class StaticLayoutTest {
         state.setByString("| U+261D U+1F3FB U+261D U+1F3FB U+261D U+1F3FB");
         moveCursorToLeftCursorableOffset(state, paint);
     }
+
+    private static StaticLayout buildPlainTextLayout(String text, TextPaint paint, int width) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+    }
+
+    /**
+     * Laying out the same plain text again gives the same lines, and changing the paint or the
+     * width is taken into account.
+     */
+    @Test
+    public void testRepeatedPlainTextLayout() {
+        final String text = "the quick brown fox jumps over the lazy dog\n"
+                + "pack my box with five dozen liquor jugs";
+        final TextPaint paint = new TextPaint();
+        paint.setTextSize(20);
+
+        final StaticLayout first = buildPlainTextLayout(text, paint, 200);
+        final StaticLayout second = buildPlainTextLayout(text, paint, 200);
+        assertEquals(first.getLineCount(), second.getLineCount());
+        for (int i = 0; i < first.getLineCount(); i++) {
+            assertEquals(first.getLineEnd(i), second.getLineEnd(i));
+            assertEquals(first.getLineWidth(i), second.getLineWidth(i), 0.0f);
+            assertEquals(first.getLineDescent(i), second.getLineDescent(i));
+        }
+
+        final StaticLayout wider = buildPlainTextLayout(text, paint, 2000);
+        assertEquals(2, wider.getLineCount());
+
+        paint.setTextSize(40);
+        final StaticLayout larger = buildPlainTextLayout(text, paint, 200);
+        assertTrue(larger.getLineCount() > first.getLineCount());
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class FrameAttributionTest {
+    private static final long VSYNC = 1000;
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testOfferView_keepsSlowestViewsInOrder() {
+        final FrameAttribution attribution = new FrameAttribution();
+        final long[] durations = { 30, 10, 50, 20, 60, 40, 5 };
+        for (int i = 0; i < durations.length; i++) {
+            attribution.offerView(newView(i), FrameAttribution.PHASE_MEASURE, durations[i]);
+        }
+
+        assertEquals(FrameAttribution.MAX_VIEW_COUNT, attribution.getViewCount());
+        final long[] expectedDurations = { 60, 50, 40, 30, 20 };
+        final int[] expectedIds = { 4, 2, 5, 0, 3 };
+        for (int i = 0; i < FrameAttribution.MAX_VIEW_COUNT; i++) {
+            assertEquals(expectedDurations[i], attribution.getViewDuration(i));
+            assertEquals(expectedIds[i], attribution.getViewId(i));
+            assertEquals(View.class.getName(), attribution.getViewClassName(i));
+        }
+    }
+
+    @Test
+    public void testOfferView_keepsPhaseAndClass() {
+        final FrameAttribution attribution = new FrameAttribution();
+        attribution.offerView(newView(1), FrameAttribution.PHASE_LAYOUT, 10);
+        attribution.offerView(new FrameLayout(mContext), FrameAttribution.PHASE_DRAW, 20);
+
+        assertEquals(2, attribution.getViewCount());
+        assertEquals(View.NO_ID, attribution.getViewId(0));
+        assertEquals(FrameLayout.class.getName(), attribution.getViewClassName(0));
+        assertEquals(FrameAttribution.PHASE_DRAW, attribution.getViewPhase(0));
+        assertEquals(1, attribution.getViewId(1));
+        assertEquals(FrameAttribution.PHASE_LAYOUT, attribution.getViewPhase(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetViewId_outOfBounds() {
+        final FrameAttribution attribution = new FrameAttribution();
+        attribution.offerView(newView(1), FrameAttribution.PHASE_MEASURE, 10);
+        attribution.getViewId(1);
+    }
+
+    @Test
+    public void testExitView_excludesChildTime() {
+        final FrameAttributionRecorder recorder = new FrameAttributionRecorder(1);
+        final View parent = newView(1);
+        final View child = newView(2);
+        final long childSleepMillis = 50;
+
+        recorder.beginFrame(VSYNC);
+        assertTrue(recorder.enterView());
+        assertTrue(recorder.enterView());
+        SystemClock.sleep(childSleepMillis);
+        recorder.exitView(child, FrameAttribution.PHASE_MEASURE);
+        recorder.exitView(parent, FrameAttribution.PHASE_MEASURE);
+        recorder.endFrame();
+
+        final FrameAttribution attribution = new FrameAttribution();
+        assertTrue(recorder.getFrame(VSYNC, attribution));
+        assertTrue(attribution.areViewsSampled());
+        assertEquals(2, attribution.getViewCount());
+        assertEquals(2, attribution.getViewId(0));
+        assertTrue(attribution.getViewDuration(0)
+                >= TimeUnit.MILLISECONDS.toNanos(childSleepMillis));
+        assertEquals(1, attribution.getViewId(1));
+        assertTrue(attribution.getViewDuration(1)
+                < TimeUnit.MILLISECONDS.toNanos(childSleepMillis));
+    }
+
+    @Test
+    public void testEnterView_notSampled() {
+        final FrameAttributionRecorder recorder = new FrameAttributionRecorder(2);
+
+        recorder.beginFrame(VSYNC);
+        assertFalse(recorder.enterView());
+        recorder.endFrame();
+
+        final FrameAttribution attribution = new FrameAttribution();
+        assertTrue(recorder.getFrame(VSYNC, attribution));
+        assertFalse(attribution.areViewsSampled());
+        assertEquals(0, attribution.getViewCount());
+    }
+
+    @Test
+    public void testClear_forgetsFrames() {
+        final FrameAttributionRecorder recorder = new FrameAttributionRecorder(1);
+        recorder.beginFrame(VSYNC);
+        recorder.enterView();
+        recorder.exitView(newView(1), FrameAttribution.PHASE_DRAW);
+        recorder.endFrame();
+
+        recorder.clear();
+
+        assertFalse(recorder.getFrame(VSYNC, new FrameAttribution()));
+    }
+
+    private View newView(int id) {
+        final View view = new View(mContext);
+        view.setId(id);
+        return view;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+
+import com.android.compatibility.common.util.WidgetTestUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests of layout requests from inside a measure boundary, see
+ * {@link View#setMeasureBoundary(boolean)}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ViewMeasureBoundaryTest {
+    private static final int ROOT_SIZE = 500;
+    private static final int BOUNDARY_SIZE = 100;
+
+    @Rule
+    public ActivityTestRule<Activity> mActivityRule = new ActivityTestRule<>(Activity.class);
+
+    private Context mContext;
+    private CountingFrameLayout mRoot;
+    private CountingFrameLayout mMiddle;
+    private CountingFrameLayout mBoundary;
+    private SizedView mLeaf;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mRoot = new CountingFrameLayout(mContext);
+        mMiddle = new CountingFrameLayout(mContext);
+        mBoundary = new CountingFrameLayout(mContext);
+        mLeaf = new SizedView(mContext, 50, 50);
+        mBoundary.addView(mLeaf,
+                new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        mMiddle.addView(mBoundary, new LayoutParams(BOUNDARY_SIZE, BOUNDARY_SIZE));
+        mRoot.addView(mMiddle);
+        mBoundary.setMeasureBoundary(true);
+    }
+
+    @Test
+    public void testRequestLayout_skipsAncestors() {
+        measureAndLayout(mRoot);
+        resetCounts(mRoot, mMiddle, mBoundary);
+
+        mLeaf.requestLayout();
+        assertFalse(mRoot.isLayoutRequested());
+        assertFalse(mMiddle.isLayoutRequested());
+        assertTrue(mBoundary.isLayoutRequested());
+        measureAndLayout(mRoot);
+
+        assertEquals(0, mRoot.mMeasureCount);
+        assertEquals(0, mMiddle.mMeasureCount);
+        assertEquals(1, mBoundary.mMeasureCount);
+        assertEquals(0, mRoot.mLayoutCount);
+        assertEquals(0, mMiddle.mLayoutCount);
+        assertEquals(1, mBoundary.mLayoutCount);
+        assertEquals(1, mLeaf.mMeasureCount);
+        assertFalse(mBoundary.isLayoutRequested());
+    }
+
+    @Test
+    public void testRequestLayout_withoutBoundary_measuresAncestors() {
+        mBoundary.setMeasureBoundary(false);
+        measureAndLayout(mRoot);
+        resetCounts(mRoot, mMiddle, mBoundary);
+
+        mLeaf.requestLayout();
+        assertTrue(mRoot.isLayoutRequested());
+        measureAndLayout(mRoot);
+
+        assertEquals(1, mRoot.mMeasureCount);
+        assertEquals(1, mMiddle.mMeasureCount);
+        assertEquals(1, mBoundary.mMeasureCount);
+    }
+
+    @Test
+    public void testRequestLayout_boundarySizeChanges_measuresParent() {
+        // Not a real boundary, since its size depends on its child.
+        mBoundary.setLayoutParams(
+                new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        measureAndLayout(mRoot);
+        assertEquals(50, mBoundary.getWidth());
+        resetCounts(mRoot, mMiddle, mBoundary);
+
+        mLeaf.setSize(80, 80);
+        measureAndLayout(mRoot);
+
+        assertEquals(1, mMiddle.mMeasureCount);
+        // The size of the parent doesn't change, so its own parent is still skipped.
+        assertEquals(0, mRoot.mMeasureCount);
+        assertEquals(ROOT_SIZE, mMiddle.getMeasuredWidth());
+        assertEquals(80, mBoundary.getWidth());
+        assertEquals(80, mBoundary.getHeight());
+    }
+
+    @Test
+    public void testRequestLayout_boundaryBaselineChanges_measuresParent() {
+        final CountingLinearLayout row = new CountingLinearLayout(mContext);
+        final SizedView other = new SizedView(mContext, 50, 50);
+        other.mBaseline = 40;
+        final BaselineFrameLayout boundary = new BaselineFrameLayout(mContext);
+        final SizedView leaf = new SizedView(mContext, 50, 50);
+        leaf.mBaseline = 40;
+        boundary.addView(leaf);
+        boundary.setMeasureBoundary(true);
+        row.addView(other);
+        row.addView(boundary, new LinearLayout.LayoutParams(BOUNDARY_SIZE, BOUNDARY_SIZE));
+        measureAndLayout(row);
+        assertEquals(0, boundary.getTop());
+        row.mMeasureCount = 0;
+
+        leaf.mBaseline = 20;
+        leaf.requestLayout();
+        measureAndLayout(row);
+
+        assertEquals(1, row.mMeasureCount);
+        // Aligned with the baseline of the other child again.
+        assertEquals(20, boundary.getTop());
+    }
+
+    @Test
+    public void testRequestLayout_opticalParent_measuresParent() {
+        mMiddle.setLayoutMode(ViewGroup.LAYOUT_MODE_OPTICAL_BOUNDS);
+        measureAndLayout(mRoot);
+        resetCounts(mRoot, mMiddle, mBoundary);
+
+        mLeaf.requestLayout();
+        measureAndLayout(mRoot);
+
+        // The previous MeasureSpecs of the boundary can't be reused as they are.
+        assertEquals(1, mMiddle.mMeasureCount);
+        assertEquals(1, mBoundary.mMeasureCount);
+        assertEquals(BOUNDARY_SIZE, mBoundary.getWidth());
+        assertEquals(BOUNDARY_SIZE, mBoundary.getHeight());
+    }
+
+    @Test
+    public void testRequestLayout_parentOverridesRequestLayout_seesRequest() {
+        final RequestCountingFrameLayout parent = new RequestCountingFrameLayout(mContext);
+        mRoot.removeView(mMiddle);
+        parent.addView(mMiddle);
+        mRoot.addView(parent);
+        measureAndLayout(mRoot);
+        resetCounts(mRoot, mMiddle, mBoundary);
+        parent.mRequestCount = 0;
+
+        mLeaf.requestLayout();
+
+        assertEquals(1, parent.mRequestCount);
+        assertTrue(mRoot.isLayoutRequested());
+        measureAndLayout(mRoot);
+        assertEquals(1, mRoot.mMeasureCount);
+    }
+
+    @Test
+    public void testMeasureCounts() throws Throwable {
+        WidgetTestUtils.runOnMainAndDrawSync(mActivityRule, mRoot,
+                () -> mActivityRule.getActivity().setContentView(mRoot));
+
+        WidgetTestUtils.runOnMainAndDrawSync(mActivityRule, mRoot, () -> mLeaf.requestLayout());
+
+        final ViewRootImpl viewRoot = mRoot.getViewRootImpl();
+        // Only the boundary and its child are measured again.
+        assertEquals(2, viewRoot.mLastTraversalMeasureCount);
+        assertTrue(viewRoot.mLastTraversalMeasureSkipCount > 0);
+    }
+
+    private static void measureAndLayout(View root) {
+        root.measure(MeasureSpec.makeMeasureSpec(ROOT_SIZE, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(ROOT_SIZE, MeasureSpec.EXACTLY));
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+
+    private static void resetCounts(CountingFrameLayout... views) {
+        for (CountingFrameLayout view : views) {
+            view.mMeasureCount = 0;
+            view.mLayoutCount = 0;
+        }
+    }
+
+    private static class CountingFrameLayout extends FrameLayout {
+        int mMeasureCount;
+        int mLayoutCount;
+
+        CountingFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mLayoutCount++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+
+    private static class RequestCountingFrameLayout extends FrameLayout {
+        int mRequestCount;
+
+        RequestCountingFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            mRequestCount++;
+            super.requestLayout();
+        }
+    }
+
+    private static class CountingLinearLayout extends LinearLayout {
+        int mMeasureCount;
+
+        CountingLinearLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    /** Has the baseline its first child had when it was last measured. */
+    private static class BaselineFrameLayout extends FrameLayout {
+        private int mBaseline = -1;
+
+        BaselineFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            mBaseline = getChildAt(0).getBaseline();
+        }
+
+        @Override
+        public int getBaseline() {
+            return mBaseline;
+        }
+    }
+
+    private static class SizedView extends View {
+        int mWidth;
+        int mHeight;
+        int mBaseline = -1;
+        int mMeasureCount;
+
+        SizedView(Context context, int width, int height) {
+            super(context);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        void setSize(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            requestLayout();
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            setMeasuredDimension(resolveSize(mWidth, widthMeasureSpec),
+                    resolveSize(mHeight, heightMeasureSpec));
+        }
+
+        @Override
+        public int getBaseline() {
+            return mBaseline;
+        }
+    }
+}
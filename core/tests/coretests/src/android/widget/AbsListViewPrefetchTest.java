@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.view.ViewGroup.LayoutParams;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Tests of the item prefetch of {@link AbsListView}, see
+ * {@link AbsListView#setItemPrefetchEnabled(boolean)}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AbsListViewPrefetchTest {
+    private static final int ITEM_COUNT = 100;
+    private static final int ITEM_HEIGHT = 10;
+    private static final int WIDTH = 100;
+    // Five rows are visible.
+    private static final int HEIGHT = 5 * ITEM_HEIGHT;
+
+    private Context mContext;
+    private TestAdapter mAdapter;
+    private final ArrayList<View> mScrappedViews = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mAdapter = new TestAdapter(mContext);
+    }
+
+    @Test
+    public void testListView_prefetchedViewIsUsed() {
+        final ListView listView = createListView();
+
+        prefetch(listView);
+        assertEquals(1, mAdapter.getViewCount(5));
+        assertEquals(1, mAdapter.getViewCount(6));
+        final View prefetched = mAdapter.mLastViews.get(5);
+
+        listView.scrollListBy(ITEM_HEIGHT);
+
+        assertSame(prefetched, listView.getChildAt(listView.getChildCount() - 1));
+        assertEquals(1, mAdapter.getViewCount(5));
+        assertEquals(1, listView.mPrefetcher.mHitCount);
+        assertEquals(0, listView.mPrefetcher.mDiscardCount);
+    }
+
+    @Test
+    public void testGridView_prefetchedRowIsUsed() {
+        final GridView gridView = new GridView(mContext);
+        gridView.setNumColumns(2);
+        setUp(gridView);
+
+        // Two rows of two items.
+        prefetch(gridView);
+        for (int position = 10; position < 14; position++) {
+            assertEquals(1, mAdapter.getViewCount(position));
+        }
+
+        gridView.scrollListBy(ITEM_HEIGHT);
+
+        assertEquals(1, mAdapter.getViewCount(10));
+        assertEquals(1, mAdapter.getViewCount(11));
+        assertEquals(2, gridView.mPrefetcher.mHitCount);
+    }
+
+    @Test
+    public void testListView_viewTypeChanged_prefetchedViewIsDiscarded() {
+        mAdapter.mViewTypeCount = 2;
+        final ListView listView = createListView();
+        prefetch(listView);
+        final View prefetched = mAdapter.mLastViews.get(5);
+
+        mAdapter.mViewTypes.put(5, 1);
+        listView.scrollListBy(ITEM_HEIGHT);
+
+        assertEquals(2, mAdapter.getViewCount(5));
+        assertEquals(0, listView.mPrefetcher.mHitCount);
+        assertEquals(1, listView.mPrefetcher.mDiscardCount);
+        assertTrue(mScrappedViews.contains(prefetched));
+    }
+
+    @Test
+    public void testListView_stableIdChanged_prefetchedViewIsDiscarded() {
+        mAdapter.mHasStableIds = true;
+        final ListView listView = createListView();
+        prefetch(listView);
+        final View prefetched = mAdapter.mLastViews.get(5);
+
+        mAdapter.mIdOffset = ITEM_COUNT;
+        listView.scrollListBy(ITEM_HEIGHT);
+
+        assertEquals(2, mAdapter.getViewCount(5));
+        assertEquals(0, listView.mPrefetcher.mHitCount);
+        assertEquals(1, listView.mPrefetcher.mDiscardCount);
+        assertTrue(mScrappedViews.contains(prefetched));
+    }
+
+    @Test
+    public void testListView_dataChanged_prefetchedViewsAreDiscarded() {
+        final ListView listView = createListView();
+        prefetch(listView);
+        final View prefetched5 = mAdapter.mLastViews.get(5);
+        final View prefetched6 = mAdapter.mLastViews.get(6);
+
+        mAdapter.notifyDataSetChanged();
+        measureAndLayout(listView);
+
+        assertEquals(0, listView.mPrefetcher.mHitCount);
+        assertEquals(2, listView.mPrefetcher.mDiscardCount);
+        assertTrue(mScrappedViews.contains(prefetched5));
+        assertTrue(mScrappedViews.contains(prefetched6));
+    }
+
+    @Test
+    public void testGridView_dataChanged_prefetchedViewsAreDiscarded() {
+        final GridView gridView = new GridView(mContext);
+        gridView.setNumColumns(2);
+        setUp(gridView);
+        prefetch(gridView);
+
+        mAdapter.notifyDataSetChanged();
+        measureAndLayout(gridView);
+
+        assertEquals(0, gridView.mPrefetcher.mHitCount);
+        assertEquals(4, gridView.mPrefetcher.mDiscardCount);
+    }
+
+    @Test
+    public void testListView_missesOfUnrecycledTypesAreNotCounted() {
+        final ListView listView = createListView();
+        mAdapter.mViewTypes.put(5, AdapterView.ITEM_VIEW_TYPE_IGNORE);
+        listView.reportScrollStateChange(AbsListView.OnScrollListener.SCROLL_STATE_TOUCH_SCROLL);
+
+        listView.scrollListBy(ITEM_HEIGHT);
+        assertEquals(0, listView.mPrefetcher.mMissCount);
+
+        listView.scrollListBy(ITEM_HEIGHT);
+        assertEquals(1, listView.mPrefetcher.mMissCount);
+    }
+
+    @Test
+    public void testAddDetachedScrapView() {
+        mAdapter.mViewTypeCount = 2;
+        mAdapter.mViewTypes.put(3, 1);
+        final ListView listView = createListView();
+        final AbsListView.RecycleBin recycler = listView.mRecycler;
+
+        final View scrap = createItemView(1);
+        recycler.addDetachedScrapView(scrap, 3);
+
+        assertEquals(1, mScrappedViews.size());
+        assertTrue(recycler.hasScrapView(1));
+        assertFalse(recycler.hasScrapView(0));
+        assertSame(scrap, recycler.getScrapView(3));
+        assertFalse(recycler.hasScrapView(1));
+    }
+
+    @Test
+    public void testAddDetachedScrapView_ignoresUnrecyclableViews() {
+        final ListView listView = createListView();
+        final AbsListView.RecycleBin recycler = listView.mRecycler;
+
+        final View transientView = createItemView(0);
+        transientView.setHasTransientState(true);
+        recycler.addDetachedScrapView(transientView, 3);
+        recycler.addDetachedScrapView(
+                createItemView(AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER), 3);
+
+        assertEquals(0, mScrappedViews.size());
+        assertFalse(recycler.hasScrapView(0));
+        assertNull(recycler.getScrapView(3));
+    }
+
+    private ListView createListView() {
+        final ListView listView = new ListView(mContext);
+        listView.setDivider(null);
+        listView.setDividerHeight(0);
+        setUp(listView);
+        return listView;
+    }
+
+    private void setUp(AbsListView listView) {
+        listView.setItemPrefetchEnabled(true);
+        listView.setAdapter(mAdapter);
+        listView.setRecyclerListener(mScrappedViews::add);
+        measureAndLayout(listView);
+        mScrappedViews.clear();
+    }
+
+    private View createItemView(int viewType) {
+        final View view = new View(mContext);
+        final AbsListView.LayoutParams lp =
+                new AbsListView.LayoutParams(LayoutParams.MATCH_PARENT, ITEM_HEIGHT);
+        lp.viewType = viewType;
+        view.setLayoutParams(lp);
+        return view;
+    }
+
+    private static void prefetch(AbsListView listView) {
+        listView.mPrefetcher.post(true /* scrollingDown */);
+        listView.mPrefetcher.prefetchItems(Long.MAX_VALUE);
+    }
+
+    private static void measureAndLayout(View view) {
+        view.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static class TestAdapter extends BaseAdapter {
+        private final Context mContext;
+        int mViewTypeCount = 1;
+        final SparseIntArray mViewTypes = new SparseIntArray();
+        boolean mHasStableIds;
+        long mIdOffset;
+
+        private final SparseIntArray mGetViewCounts = new SparseIntArray();
+        final ArrayList<View> mLastViews = new ArrayList<>();
+
+        TestAdapter(Context context) {
+            mContext = context;
+            for (int i = 0; i < ITEM_COUNT; i++) {
+                mLastViews.add(null);
+            }
+        }
+
+        int getViewCount(int position) {
+            return mGetViewCounts.get(position);
+        }
+
+        @Override
+        public int getCount() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position + mIdOffset;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return mHasStableIds;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return mViewTypeCount;
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return mViewTypes.get(position);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            mGetViewCounts.put(position, mGetViewCounts.get(position) + 1);
+            View view = convertView;
+            if (view == null) {
+                view = new View(mContext);
+                view.setLayoutParams(
+                        new AbsListView.LayoutParams(LayoutParams.MATCH_PARENT, ITEM_HEIGHT));
+            }
+            mLastViews.set(position, view);
+            return view;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.method.SingleLineTransformationMethod;
+import android.util.TypedValue;
+import android.view.View.MeasureSpec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests of {@link TextView#setPrecomputedText(PrecomputedText)}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class TextViewPrecomputedTextTest {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 500;
+    // Not boring, so that it is laid out with a StaticLayout.
+    private static final String TEXT = "Hello\nworld";
+
+    private Context mContext;
+    private TextView mTextView;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mTextView = new TextView(mContext);
+    }
+
+    @Test
+    public void testParamsMatch_precomputedLayoutIsUsed() {
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertTrue(mTextView.getLayout() instanceof StaticLayout);
+        // Already handed over to the view.
+        assertNull(takeLayout(precomputed));
+        assertTrue(TextUtils.equals(TEXT, mTextView.getLayout().getText()));
+    }
+
+    @Test
+    public void testTransformationMethod_layoutIsNotUsed() {
+        mTextView.setTransformationMethod(SingleLineTransformationMethod.getInstance());
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testAllCaps_layoutIsNotUsed() {
+        mTextView.setAllCaps(true);
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testEllipsize_layoutIsNotUsed() {
+        mTextView.setEllipsize(TextUtils.TruncateAt.END);
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testMaxLines_layoutIsNotUsed() {
+        mTextView.setMaxLines(1);
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testWidthMismatch_layoutIsNotUsed() {
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+
+        measureAndLayout(mTextView, WIDTH / 2);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testPaintMismatch_layoutIsNotUsed() {
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+        mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextView.getTextSize() * 2);
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    @Test
+    public void testTextChanged_layoutIsNotUsed() {
+        final PrecomputedText precomputed = precompute(mTextView);
+        mTextView.setPrecomputedText(precomputed);
+        mTextView.setText(TEXT + "!");
+
+        measureAndLayout(mTextView, WIDTH);
+
+        assertNotNull(takeLayout(precomputed));
+    }
+
+    private static PrecomputedText precompute(TextView textView) {
+        return PrecomputedText.create(TEXT, textView.getPrecomputedTextParams(textWidth(textView)));
+    }
+
+    private static StaticLayout takeLayout(PrecomputedText precomputed) {
+        return precomputed.takeLayout(new TextPaint());
+    }
+
+    private static int textWidth(TextView textView) {
+        return WIDTH - textView.getCompoundPaddingLeft() - textView.getCompoundPaddingRight();
+    }
+
+    private static void measureAndLayout(TextView textView, int width) {
+        textView.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        textView.layout(0, 0, width, HEIGHT);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Parcel;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Test class for {@link BatteryStatsHistoryChunks}.
+ *
+ * To run the tests, use
+ *
+ * runtest -c com.android.internal.os.BatteryStatsHistoryChunksTest frameworks-core
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BatteryStatsHistoryChunksTest {
+    private static final int MAX_CHUNKS = 3;
+
+    private File mDir;
+    private BatteryStatsHistoryChunks mChunks;
+
+    @Before
+    public void setUp() {
+        mDir = new File(InstrumentationRegistry.getContext().getCacheDir(), "battery-history");
+        deleteDir();
+        // Write synchronously, so the files are there as soon as a chunk is added.
+        mChunks = new BatteryStatsHistoryChunks(mDir, MAX_CHUNKS, Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir();
+    }
+
+    private void deleteDir() {
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static Parcel buffer(int... values) {
+        final Parcel p = Parcel.obtain();
+        for (int value : values) {
+            p.writeInt(value);
+        }
+        return p;
+    }
+
+    private void assertChunk(int index, int... values) {
+        final Parcel p = Parcel.obtain();
+        try {
+            assertTrue(mChunks.read(index, p));
+            assertEquals(values.length * 4, p.dataSize());
+            for (int value : values) {
+                assertEquals(value, p.readInt());
+            }
+        } finally {
+            p.recycle();
+        }
+    }
+
+    @Test
+    public void testAddAndRead() throws Exception {
+        mChunks.add(buffer(1, 2, 3), 100);
+        mChunks.add(buffer(4), 200);
+
+        assertEquals(2, mChunks.size());
+        assertEquals(100, mChunks.getEndTime(0));
+        assertEquals(200, mChunks.getEndTime(1));
+        assertEquals(16, mChunks.getRawSize());
+        assertChunk(0, 1, 2, 3);
+        assertChunk(1, 4);
+    }
+
+    @Test
+    public void testLoadFromDisk() throws Exception {
+        mChunks.add(buffer(1, 2), 100);
+        mChunks.add(buffer(3), 200);
+
+        final BatteryStatsHistoryChunks loaded =
+                new BatteryStatsHistoryChunks(mDir, MAX_CHUNKS, Runnable::run);
+        loaded.load();
+        mChunks = loaded;
+
+        assertEquals(2, mChunks.size());
+        assertEquals(200, mChunks.getEndTime(1));
+        assertChunk(0, 1, 2);
+        assertChunk(1, 3);
+    }
+
+    @Test
+    public void testOldestChunksAreDropped() throws Exception {
+        for (int i = 0; i < MAX_CHUNKS + 2; i++) {
+            mChunks.add(buffer(i), i * 100);
+        }
+
+        assertEquals(MAX_CHUNKS, mChunks.size());
+        assertChunk(0, 2);
+        assertFalse(mChunks.getFile(0).exists());
+        assertFalse(mChunks.getFile(1).exists());
+    }
+
+    @Test
+    public void testRemoveAfter() throws Exception {
+        mChunks.add(buffer(1), 100);
+        mChunks.add(buffer(2), 200);
+        mChunks.add(buffer(3), 300);
+
+        mChunks.removeAfter(200);
+
+        assertEquals(2, mChunks.size());
+        assertFalse(mChunks.getFile(2).exists());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        mChunks.add(buffer(1), 100);
+        mChunks.clear();
+
+        assertEquals(0, mChunks.size());
+        assertFalse(mChunks.getFile(0).exists());
+    }
+}
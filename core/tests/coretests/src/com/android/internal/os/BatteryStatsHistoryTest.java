@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test class for reading the {@link BatteryStatsImpl} history back, once older history has been
+ * moved to {@link BatteryStatsHistoryChunks}.
+ *
+ * To run the tests, use
+ *
+ * runtest -c com.android.internal.os.BatteryStatsHistoryTest frameworks-core
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class BatteryStatsHistoryTest {
+    private static final int UID = 10100;
+    // Long enough for every event to be written as a record of its own.
+    private static final long STEP_MS = 2000;
+    private static final int EVENT_CODE = HistoryItem.EVENT_JOB | HistoryItem.EVENT_FLAG_START;
+    // The number of tags that fit in the pool, see BatteryStatsImpl.writeHistoryTag().
+    private static final int MAX_POOLED_TAGS = 0xfffe;
+
+    private File mDir;
+    private MockClocks mClocks;
+    private MockBatteryStatsImpl mStats;
+    private final ArrayList<String> mEventNames = new ArrayList<>();
+    private final ArrayList<Long> mEventTimes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mDir = new File(InstrumentationRegistry.getContext().getCacheDir(), "battery-history");
+        deleteDir();
+        mClocks = new MockClocks();
+        // Write synchronously, so the files are there as soon as a chunk is added.
+        mStats = new MockBatteryStatsImpl(mClocks, new BatteryStatsHistoryChunks(mDir,
+                BatteryStatsImpl.MAX_HISTORY_CHUNKS, Runnable::run));
+        mStats.mHaveBatteryLevel = true;
+        mStats.mRecordingHistory = true;
+        // Start the history with a record without an event, as events are not printed for
+        // the reset record.
+        mStats.addHistoryRecordLocked(mClocks.realtime, mClocks.uptime);
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir();
+    }
+
+    private void deleteDir() {
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void testIterateAcrossChunks_timesAreAbsoluteAndTagsResolve() {
+        int i = 0;
+        while (mStats.mHistoryChunks.size() < 2) {
+            addEvent("job" + (i++ % 100));
+        }
+        // And some more in the history buffer.
+        for (int j = 0; j < 10; j++) {
+            addEvent("job" + (i++ % 100));
+        }
+
+        assertEventsReadBack();
+    }
+
+    @Test
+    public void testFullTagPool_inlineTagsResolve() {
+        for (int i = 0; i < MAX_POOLED_TAGS + 10; i++) {
+            addEvent("job" + i);
+        }
+        assertTrue(mStats.mHistoryChunks.size() > 0);
+
+        assertEventsReadBack();
+    }
+
+    @Test
+    public void testFullTagPool_checkinRefersToStringPool() {
+        for (int i = 0; i < MAX_POOLED_TAGS + 10; i++) {
+            addEvent("job" + i);
+        }
+
+        final StringWriter out = new StringWriter();
+        final PrintWriter pw = new PrintWriter(out);
+        mStats.dumpCheckinLocked(InstrumentationRegistry.getContext(), pw, null,
+                BatteryStats.DUMP_HISTORY_ONLY, -1);
+        pw.flush();
+
+        // String pool lines come before the history lines referring to them.
+        final Pattern poolLine = Pattern.compile(",hsp,(\\d+)," + UID + ",\"(job\\d+)\"");
+        final Pattern eventRef = Pattern.compile(",\\+Ejb=(-?\\d+)");
+        final HashSet<Integer> poolIndices = new HashSet<>();
+        final HashSet<String> poolNames = new HashSet<>();
+        int numEvents = 0;
+        for (String line : out.toString().split("\n")) {
+            final Matcher pool = poolLine.matcher(line);
+            if (pool.find()) {
+                assertTrue(poolIndices.add(Integer.parseInt(pool.group(1))));
+                poolNames.add(pool.group(2));
+                continue;
+            }
+            final Matcher event = eventRef.matcher(line);
+            if (event.find()) {
+                assertTrue(line, poolIndices.contains(Integer.parseInt(event.group(1))));
+                numEvents++;
+            }
+        }
+        assertEquals(mEventNames.size(), numEvents);
+        assertEquals(mEventNames.size(), poolNames.size());
+    }
+
+    private void addEvent(String name) {
+        mClocks.realtime += STEP_MS;
+        mClocks.uptime += STEP_MS;
+        mStats.addHistoryEventLocked(mClocks.realtime, mClocks.uptime, EVENT_CODE, name, UID);
+        mEventNames.add(name);
+        mEventTimes.add(mClocks.realtime);
+    }
+
+    private void assertEventsReadBack() {
+        final HistoryItem rec = new HistoryItem();
+        int numEvents = 0;
+        long lastTime = -1;
+        assertTrue(mStats.startIteratingHistoryLocked());
+        try {
+            while (mStats.getNextHistoryLocked(rec)) {
+                assertTrue(rec.time >= lastTime);
+                lastTime = rec.time;
+                if (rec.eventCode == HistoryItem.EVENT_NONE) {
+                    continue;
+                }
+                assertEquals(EVENT_CODE, rec.eventCode);
+                assertEquals((long) mEventTimes.get(numEvents), rec.time);
+                assertEquals(mEventNames.get(numEvents), rec.eventTag.string);
+                assertEquals(UID, rec.eventTag.uid);
+                numEvents++;
+            }
+        } finally {
+            mStats.finishIteratingHistoryLocked();
+        }
+        assertEquals(mEventNames.size(), numEvents);
+    }
+}
@@ -24,7 +24,11 @@ public class MockBatteryStatsImpl extends BatteryStatsImpl {
     public boolean mForceOnBattery;
 
     MockBatteryStatsImpl(Clocks clocks) {
-        super(clocks);
+        this(clocks, null);
+    }
+
+    MockBatteryStatsImpl(Clocks clocks, BatteryStatsHistoryChunks historyChunks) {
+        super(clocks, historyChunks);
         this.clocks = mClocks;
         mBluetoothScanTimer = new StopwatchTimer(mClocks, null, -14, null, mOnBatteryTimeBase);
     }
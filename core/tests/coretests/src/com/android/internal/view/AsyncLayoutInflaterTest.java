@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.TwoLineListItem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link AsyncLayoutInflater}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AsyncLayoutInflaterTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Context mContext;
+    private Handler mHandler;
+    private CountingExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor = new CountingExecutor();
+        AsyncLayoutInflater.resetUnsafeLayouts();
+    }
+
+    @Test
+    public void testInflate_deliversOnHandlerThread() throws Exception {
+        final AsyncLayoutInflater inflater = new AsyncLayoutInflater(
+                LayoutInflater.from(mContext), mHandler, mExecutor);
+
+        final Result result = inflate(inflater, android.R.layout.simple_list_item_1);
+
+        assertTrue(result.mView instanceof TextView);
+        assertNull(result.mView.getParent());
+        assertSame(Looper.getMainLooper(), result.mLooper);
+        assertEquals(1, mExecutor.mCount.get());
+    }
+
+    @Test
+    public void testInflate_unsafeLayout_inflatedOnHandlerThread() throws Exception {
+        // Refuses to create views off the main thread, like views that create a Handler.
+        final LayoutInflater mainThreadOnly =
+                LayoutInflater.from(mContext).cloneInContext(mContext);
+        mainThreadOnly.setFactory2(new LayoutInflater.Factory2() {
+            @Override
+            public View onCreateView(View parent, String name, Context context,
+                    AttributeSet attrs) {
+                if (Looper.myLooper() != Looper.getMainLooper()) {
+                    throw new IllegalStateException("Not on the main thread");
+                }
+                return null;
+            }
+
+            @Override
+            public View onCreateView(String name, Context context, AttributeSet attrs) {
+                return onCreateView(null, name, context, attrs);
+            }
+        });
+        final AsyncLayoutInflater inflater =
+                new AsyncLayoutInflater(mainThreadOnly, mHandler, mExecutor);
+
+        Result result = inflate(inflater, android.R.layout.simple_list_item_2);
+        assertTrue(result.mView instanceof TwoLineListItem);
+        assertSame(Looper.getMainLooper(), result.mLooper);
+        assertEquals(1, mExecutor.mCount.get());
+
+        // The layout is now known not to be inflatable in the background.
+        result = inflate(inflater, android.R.layout.simple_list_item_2);
+        assertTrue(result.mView instanceof TwoLineListItem);
+        assertEquals(1, mExecutor.mCount.get());
+    }
+
+    private static Result inflate(AsyncLayoutInflater inflater, int resid) throws Exception {
+        final Result result = new Result();
+        final CountDownLatch latch = new CountDownLatch(1);
+        inflater.inflate(resid, null, (view, inflatedResid, parent) -> {
+            assertEquals(resid, inflatedResid);
+            result.mView = view;
+            result.mLooper = Looper.myLooper();
+            latch.countDown();
+        });
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static class Result {
+        View mView;
+        Looper mLooper;
+    }
+
+    private static class CountingExecutor implements Executor {
+        final AtomicInteger mCount = new AtomicInteger();
+        private final Executor mExecutor = Executors.newSingleThreadExecutor();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mCount.incrementAndGet();
+            mExecutor.execute(runnable);
+        }
+    }
+}
@@ -102,6 +102,7 @@ import android.view.accessibility.IAccessibilityManagerClient;
 
 import com.android.internal.R;
 import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.content.PackageMonitor;
 import com.android.internal.os.SomeArgs;
 import com.android.internal.util.DumpUtils;
@@ -2611,6 +2612,66 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
         }
     }
 
+    /**
+     * A window content changed event waiting for the notification timeout of a service. Its
+     * event may be replaced by a later one with the same source until its message is handled.
+     */
+    @VisibleForTesting
+    static final class PendingContentChangedEvent {
+        AccessibilityEvent mEvent;
+
+        PendingContentChangedEvent(AccessibilityEvent event) {
+            mEvent = event;
+        }
+    }
+
+    /**
+     * Replaces the pending window content changed event with the same source as {@code event},
+     * if any, by {@code event}, merging their content change types, and recycles the replaced
+     * event. The pending event keeps its place, so the replacement is delivered when the
+     * replaced event would have been and a node that keeps changing doesn't keep postponing its
+     * event.
+     *
+     * @return true if {@code event} replaced a pending event, false if it must be posted
+     */
+    @VisibleForTesting
+    static boolean coalesceContentChangedEvent(
+            List<PendingContentChangedEvent> pendingEvents, AccessibilityEvent event) {
+        final int windowId = event.getWindowId();
+        final long sourceNodeId = event.getSourceNodeId();
+        if (sourceNodeId == AccessibilityNodeInfo.UNDEFINED_NODE_ID) {
+            return false;
+        }
+        for (int i = pendingEvents.size() - 1; i >= 0; i--) {
+            final PendingContentChangedEvent pending = pendingEvents.get(i);
+            final AccessibilityEvent oldEvent = pending.mEvent;
+            if (oldEvent.getWindowId() == windowId
+                    && oldEvent.getSourceNodeId() == sourceNodeId) {
+                event.setContentChangeTypes(mergeContentChangeTypes(
+                        oldEvent.getContentChangeTypes(), event.getContentChangeTypes()));
+                // The message of the pending event, still queued, now delivers the new event.
+                pending.mEvent = event;
+                oldEvent.recycle();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the content change types of an event that stands for two events with the given
+     *         types. An undefined change type stands for any change, but caches only drop the
+     *         descendants of the source for a subtree change, so that one is kept if either
+     *         event has it.
+     */
+    private static int mergeContentChangeTypes(int types1, int types2) {
+        if (types1 == AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED
+                || types2 == AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED) {
+            return (types1 | types2) & AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE;
+        }
+        return types1 | types2;
+    }
+
     /**
      * This class represents an accessibility service. It stores all per service
      * data required for the service management, provides API for starting/stopping the
@@ -2675,6 +2736,14 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
         final SparseArray<AccessibilityEvent> mPendingEvents =
             new SparseArray<>();
 
+        // the window content changed events pending to be dispatched to this service when it
+        // has a notification timeout, at most one per source node
+        final ArrayList<PendingContentChangedEvent> mPendingContentChangedEvents =
+                new ArrayList<>();
+
+        // the number of window content changed events replaced by a later one
+        int mCoalescedEventCount;
+
         boolean mWasConnectedAndDied;
 
         /** Whether this service relies on its {@link AccessibilityCache} being up to date */
@@ -2686,8 +2755,19 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
             @Override
             public void handleMessage(Message message) {
                 final int eventType =  message.what;
-                AccessibilityEvent event = (AccessibilityEvent) message.obj;
+                final AccessibilityEvent event;
                 boolean serviceWantsEvent = message.arg1 != 0;
+                if (message.obj instanceof PendingContentChangedEvent) {
+                    final PendingContentChangedEvent pending =
+                            (PendingContentChangedEvent) message.obj;
+                    synchronized (mLock) {
+                        // Later events with the same source can't replace it from now on.
+                        mPendingContentChangedEvents.remove(pending);
+                        event = pending.mEvent;
+                    }
+                } else {
+                    event = (AccessibilityEvent) message.obj;
+                }
                 notifyAccessibilityEventInternal(eventType, event, serviceWantsEvent);
             }
         };
@@ -3613,6 +3693,7 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
                 pw.append(", eventTypes="
                         + AccessibilityEvent.eventTypeToString(mEventTypes));
                 pw.append(", notificationTimeout=" + mNotificationTimeout);
+                pw.append(", coalescedEvents=" + mCoalescedEventCount);
                 pw.append("]");
             }
         }
@@ -3719,6 +3800,16 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
                         oldEvent.recycle();
                     }
                     message = mEventDispatchHandler.obtainMessage(eventType);
+                } else if (mNotificationTimeout > 0) {
+                    // Allow at most one pending event per source
+                    if (coalesceContentChangedEvent(mPendingContentChangedEvents, newEvent)) {
+                        mCoalescedEventCount++;
+                        return;
+                    }
+                    final PendingContentChangedEvent pending =
+                            new PendingContentChangedEvent(newEvent);
+                    mPendingContentChangedEvents.add(pending);
+                    message = mEventDispatchHandler.obtainMessage(eventType, pending);
                 } else {
                     // Send all messages, bypassing mPendingEvents
                     message = mEventDispatchHandler.obtainMessage(eventType, newEvent);
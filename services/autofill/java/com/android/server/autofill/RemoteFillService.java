@@ -83,7 +83,8 @@ final class RemoteFillService implements DeathRecipient {
 
     private final HandlerCaller mHandler;
 
-    private IAutoFillService mAutoFillService;
+    // Only modified on the handler thread, but also read by isBound() from other threads.
+    private volatile IAutoFillService mAutoFillService;
 
     private boolean mBinding;
 
@@ -234,7 +235,11 @@ final class RemoteFillService implements DeathRecipient {
         }
     }
 
-    private boolean isBound() {
+    /**
+     * Whether the service is bound, in which case every fill request sent to it runs, while
+     * otherwise only the last one is kept until it is bound. Can be called from any thread.
+     */
+    boolean isBound() {
         return mAutoFillService != null;
     }
 
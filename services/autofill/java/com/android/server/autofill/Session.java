@@ -50,6 +50,7 @@ import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Parcelable;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.service.autofill.AutofillService;
 import android.service.autofill.Dataset;
 import android.service.autofill.FillContext;
@@ -61,6 +62,7 @@ import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Slog;
 import android.util.SparseArray;
+import android.util.TimeUtils;
 import android.view.autofill.AutofillId;
 import android.view.autofill.AutofillManager;
 import android.view.autofill.AutofillValue;
@@ -100,6 +102,8 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
     private static final String TAG = "AutofillSession";
 
     private static final String EXTRA_REQUEST_ID = "android.service.autofill.extra.REQUEST_ID";
+    private static final String EXTRA_REQUEST_TIME =
+            "android.service.autofill.extra.REQUEST_TIME";
 
     private final AutofillManagerServiceImpl mService;
     private final HandlerCaller mHandlerCaller;
@@ -165,6 +169,36 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
     @GuardedBy("mLock")
     private boolean mIsSaving;
 
+    /**
+     * Id of the last structure requested from the app. A structure of an earlier request is
+     * dropped if the fill service isn't bound, as {@link RemoteFillService} then only keeps the
+     * last fill request and would cancel the earlier one anyway. Once the service is bound,
+     * every fill request runs, so every structure is sent.
+     */
+    @GuardedBy("mLock")
+    private int mLastStructureRequestId = INVALID_REQUEST_ID;
+
+    /**
+     * Number of structures sent to the service, and dropped as a later one was requested while
+     * the service wasn't bound
+     */
+    @GuardedBy("mLock")
+    private int mNumUsedStructures;
+    @GuardedBy("mLock")
+    private int mNumDroppedStructures;
+
+    /**
+     * Total number of view nodes in the structures used while debug logging was enabled, and the
+     * number of those structures; walking every structure is too expensive otherwise.
+     */
+    @GuardedBy("mLock")
+    private int mNumStructureNodes;
+    @GuardedBy("mLock")
+    private int mNumCountedStructures;
+
+    /** Total time between requesting and receiving the structures used */
+    @GuardedBy("mLock")
+    private long mStructureLatencyMs;
 
     /**
      * Receiver of assist data from the app's {@link Activity}.
@@ -192,6 +226,18 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
 
             final FillRequest request;
             synchronized (mLock) {
+                if (requestId != mLastStructureRequestId && !mRemoteFillService.isBound()) {
+                    if (sVerbose) {
+                        Slog.v(TAG, "Dropping structure for requestId " + requestId
+                                + ", last requested is " + mLastStructureRequestId);
+                    }
+                    mNumDroppedStructures++;
+                    return;
+                }
+                mNumUsedStructures++;
+                mStructureLatencyMs += SystemClock.elapsedRealtime()
+                        - receiverExtras.getLong(EXTRA_REQUEST_TIME);
+
                 // TODO(b/35708678): Must fetch the data so it's available later on handleSave(),
                 // even if if the activity is gone by then, but structure .ensureData() gives a
                 // ONE_WAY warning because system_service could block on app calls. We need to
@@ -202,6 +248,15 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
                 // Sanitize structure before it's sent to service.
                 structure.sanitizeForParceling(true);
 
+                if (sDebug || sVerbose) {
+                    final int numWindows = structure.getWindowNodeCount();
+                    for (int i = 0; i < numWindows; i++) {
+                        mNumStructureNodes +=
+                                countViewNodes(structure.getWindowNodeAt(i).getRootViewNode());
+                    }
+                    mNumCountedStructures++;
+                }
+
                 // Flags used to start the session.
                 final int flags = structure.getFlags();
 
@@ -224,6 +279,18 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
         }
     };
 
+    private static int countViewNodes(@Nullable ViewNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int count = 1;
+        final int numChildren = node.getChildCount();
+        for (int i = 0; i < numChildren; i++) {
+            count += countViewNodes(node.getChildAt(i));
+        }
+        return count;
+    }
+
     /**
      * Returns the ids of all entries in {@link #mViewStates} in the same order.
      */
@@ -327,10 +394,13 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
         try {
             final Bundle receiverExtras = new Bundle();
             receiverExtras.putInt(EXTRA_REQUEST_ID, requestId);
+            receiverExtras.putLong(EXTRA_REQUEST_TIME, SystemClock.elapsedRealtime());
             final long identity = Binder.clearCallingIdentity();
             try {
-                if (!ActivityManager.getService().requestAutofillData(mAssistReceiver,
+                if (ActivityManager.getService().requestAutofillData(mAssistReceiver,
                         receiverExtras, mActivityToken, flags)) {
+                    mLastStructureRequestId = requestId;
+                } else {
                     Slog.w(TAG, "failed to request autofill data for " + mActivityToken);
                 }
             } finally {
@@ -1431,6 +1501,11 @@ final class Session implements RemoteFillService.FillServiceCallbacks, ViewState
         pw.print(prefix); pw.print("mViewStates size: "); pw.println(mViewStates.size());
         pw.print(prefix); pw.print("mDestroyed: "); pw.println(mDestroyed);
         pw.print(prefix); pw.print("mIsSaving: "); pw.println(mIsSaving);
+        pw.print(prefix); pw.print("Structures used: "); pw.print(mNumUsedStructures);
+        pw.print(" (latency: "); TimeUtils.formatDuration(mStructureLatencyMs, pw);
+        pw.print(", nodes: "); pw.print(mNumStructureNodes);
+        pw.print(" in "); pw.print(mNumCountedStructures);
+        pw.print("), dropped: "); pw.println(mNumDroppedStructures);
         for (Map.Entry<AutofillId, ViewState> entry : mViewStates.entrySet()) {
             pw.print(prefix); pw.print("State for id "); pw.println(entry.getKey());
             entry.getValue().dump(prefix2, pw);
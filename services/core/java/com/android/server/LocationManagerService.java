@@ -1720,6 +1720,8 @@ public class LocationManagerService extends ILocationManager.Stub {
                 DEFAULT_BACKGROUND_THROTTLE_INTERVAL_MS);
 
         if (records != null) {
+            // Records whose request was added to providerRequest, in the same order.
+            final ArrayList<UpdateRecord> requestedRecords = new ArrayList<>(records.size());
             for (UpdateRecord record : records) {
                 if (isCurrentProfile(UserHandle.getUserId(record.mReceiver.mIdentity.mUid))) {
                     if (checkLocationAccess(
@@ -1742,6 +1744,7 @@ public class LocationManagerService extends ILocationManager.Stub {
 
                         record.mRequest = locationRequest;
                         providerRequest.locationRequests.add(locationRequest);
+                        requestedRecords.add(record);
                         if (interval < providerRequest.interval) {
                             providerRequest.reportLocation = true;
                             providerRequest.interval = interval;
@@ -1757,29 +1760,23 @@ public class LocationManagerService extends ILocationManager.Stub {
                 // spread the blame across all applications with a request
                 // under that threshold.
                 long thresholdInterval = (providerRequest.interval + 1000) * 3 / 2;
-                for (UpdateRecord record : records) {
-                    if (isCurrentProfile(UserHandle.getUserId(record.mReceiver.mIdentity.mUid))) {
-                        LocationRequest locationRequest = record.mRequest;
-
-                        // Don't assign battery blame for update records whose
-                        // client has no permission to receive location data.
-                        if (!providerRequest.locationRequests.contains(locationRequest)) {
-                            continue;
-                        }
-
-                        if (locationRequest.getInterval() <= thresholdInterval) {
-                            if (record.mReceiver.mWorkSource != null
-                                    && record.mReceiver.mWorkSource.size() > 0
-                                    && record.mReceiver.mWorkSource.getName(0) != null) {
-                                // Assign blame to another work source.
-                                // Can only assign blame if the WorkSource contains names.
-                                worksource.add(record.mReceiver.mWorkSource);
-                            } else {
-                                // Assign blame to caller.
-                                worksource.add(
-                                        record.mReceiver.mIdentity.mUid,
-                                        record.mReceiver.mIdentity.mPackageName);
-                            }
+                // Don't assign battery blame for update records whose
+                // client has no permission to receive location data.
+                for (UpdateRecord record : requestedRecords) {
+                    LocationRequest locationRequest = record.mRequest;
+
+                    if (locationRequest.getInterval() <= thresholdInterval) {
+                        if (record.mReceiver.mWorkSource != null
+                                && record.mReceiver.mWorkSource.size() > 0
+                                && record.mReceiver.mWorkSource.getName(0) != null) {
+                            // Assign blame to another work source.
+                            // Can only assign blame if the WorkSource contains names.
+                            worksource.add(record.mReceiver.mWorkSource);
+                        } else {
+                            // Assign blame to caller.
+                            worksource.add(
+                                    record.mReceiver.mIdentity.mUid,
+                                    record.mReceiver.mIdentity.mPackageName);
                         }
                     }
                 }
@@ -2629,6 +2626,31 @@ public class LocationManagerService extends ILocationManager.Stub {
             Receiver receiver = r.mReceiver;
             boolean receiverDead = false;
 
+            Location notifyLocation;
+            if (receiver.mAllowedResolutionLevel < RESOLUTION_LEVEL_FINE) {
+                notifyLocation = coarseLocation;  // use coarse location
+            } else {
+                notifyLocation = lastLocation;  // use fine location
+            }
+            Location lastLoc = r.mLastFixBroadcast;
+            final boolean notifyLocationDue = notifyLocation != null
+                    && ((lastLoc == null) || shouldBroadcastSafe(notifyLocation, lastLoc, r, now));
+            long prevStatusUpdateTime = r.mLastStatusBroadcast;
+            final boolean notifyStatusDue = (newStatusUpdateTime > prevStatusUpdateTime) &&
+                    (prevStatusUpdateTime != 0 || status != LocationProvider.AVAILABLE);
+
+            // Most receivers ask for updates less often than the provider produces them, so
+            // only check the user, blacklist and app op of those that are due for something.
+            if (!notifyLocationDue && !notifyStatusDue) {
+                if (r.mRealRequest.getNumUpdates() <= 0 || r.mRealRequest.getExpireAt() < now) {
+                    if (deadUpdateRecords == null) {
+                        deadUpdateRecords = new ArrayList<>();
+                    }
+                    deadUpdateRecords.add(r);
+                }
+                continue;
+            }
+
             int receiverUserId = UserHandle.getUserId(receiver.mIdentity.mUid);
             if (!isCurrentProfile(receiverUserId)
                     && !isUidALocationProvider(receiver.mIdentity.mUid)) {
@@ -2656,33 +2678,21 @@ public class LocationManagerService extends ILocationManager.Stub {
                 continue;
             }
 
-            Location notifyLocation;
-            if (receiver.mAllowedResolutionLevel < RESOLUTION_LEVEL_FINE) {
-                notifyLocation = coarseLocation;  // use coarse location
-            } else {
-                notifyLocation = lastLocation;  // use fine location
-            }
-            if (notifyLocation != null) {
-                Location lastLoc = r.mLastFixBroadcast;
-                if ((lastLoc == null) || shouldBroadcastSafe(notifyLocation, lastLoc, r, now)) {
-                    if (lastLoc == null) {
-                        lastLoc = new Location(notifyLocation);
-                        r.mLastFixBroadcast = lastLoc;
-                    } else {
-                        lastLoc.set(notifyLocation);
-                    }
-                    if (!receiver.callLocationChangedLocked(notifyLocation)) {
-                        Slog.w(TAG, "RemoteException calling onLocationChanged on " + receiver);
-                        receiverDead = true;
-                    }
-                    r.mRealRequest.decrementNumUpdates();
+            if (notifyLocationDue) {
+                if (lastLoc == null) {
+                    lastLoc = new Location(notifyLocation);
+                    r.mLastFixBroadcast = lastLoc;
+                } else {
+                    lastLoc.set(notifyLocation);
                 }
+                if (!receiver.callLocationChangedLocked(notifyLocation)) {
+                    Slog.w(TAG, "RemoteException calling onLocationChanged on " + receiver);
+                    receiverDead = true;
+                }
+                r.mRealRequest.decrementNumUpdates();
             }
 
-            long prevStatusUpdateTime = r.mLastStatusBroadcast;
-            if ((newStatusUpdateTime > prevStatusUpdateTime) &&
-                    (prevStatusUpdateTime != 0 || status != LocationProvider.AVAILABLE)) {
-
+            if (notifyStatusDue) {
                 r.mLastStatusBroadcast = newStatusUpdateTime;
                 if (!receiver.callStatusChangedLocked(provider, status, extras)) {
                     receiverDead = true;
@@ -49,6 +49,7 @@ import android.text.TextUtils;
 import android.util.LocalLog;
 
 import com.android.internal.app.IBatteryStats;
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.telephony.IOnSubscriptionsChangedListener;
 import com.android.internal.telephony.IPhoneStateListener;
 import com.android.internal.telephony.ITelephonyRegistry;
@@ -193,6 +194,20 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
 
     private final LocalLog mLocalLog = new LocalLog(100);
 
+    // Signal strength and cell info updates can arrive many times a second. They are sent to
+    // listeners from mNotifyHandler instead of the caller's thread, and an update that is
+    // superseded before it was sent is dropped, since listeners only care about the latest one.
+    // Access should be inside synchronized (mRecords).
+    private boolean[] mSignalStrengthPending;
+    private int[] mSignalStrengthPendingSubId;
+    private boolean[] mCellInfoPending;
+    private int[] mCellInfoPendingSubId;
+    private int mSignalStrengthNotifyCount;
+    private int mSignalStrengthCoalescedCount;
+    private int mCellInfoNotifyCount;
+    private int mCellInfoCoalescedCount;
+    private int mRemovedListenerCount;
+
     private PreciseDataConnectionState mPreciseDataConnectionState =
                 new PreciseDataConnectionState();
 
@@ -212,6 +227,22 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
 
     private static final int MSG_USER_SWITCHED = 1;
     private static final int MSG_UPDATE_DEFAULT_SUB = 2;
+    private static final int MSG_NOTIFY_SIGNAL_STRENGTH = 3;
+    private static final int MSG_NOTIFY_CELL_INFO = 4;
+
+    private final Handler mNotifyHandler = new Handler(BackgroundThread.get().getLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_NOTIFY_SIGNAL_STRENGTH:
+                    dispatchSignalStrength(msg.arg1);
+                    break;
+                case MSG_NOTIFY_CELL_INFO:
+                    dispatchCellInfo(msg.arg1);
+                    break;
+            }
+        }
+    };
 
     private final Handler mHandler = new Handler() {
         @Override
@@ -309,6 +340,10 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
         mVoiceActivationState = new int[numPhones];
         mDataActivationState = new int[numPhones];
         mSignalStrength = new SignalStrength[numPhones];
+        mSignalStrengthPending = new boolean[numPhones];
+        mSignalStrengthPendingSubId = new int[numPhones];
+        mCellInfoPending = new boolean[numPhones];
+        mCellInfoPendingSubId = new int[numPhones];
         mMessageWaiting = new boolean[numPhones];
         mDataConnectionPossible = new boolean[numPhones];
         mDataConnectionReason = new String[numPhones];
@@ -890,47 +925,70 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
             if (validatePhoneId(phoneId)) {
                 if (VDBG) log("notifySignalStrengthForPhoneId: valid phoneId=" + phoneId);
                 mSignalStrength[phoneId] = signalStrength;
-                for (Record r : mRecords) {
-                    if (VDBG) {
-                        log("notifySignalStrengthForPhoneId: r=" + r + " subId=" + subId
-                                + " phoneId=" + phoneId + " ss=" + signalStrength);
-                    }
-                    if (r.matchPhoneStateListenerEvent(
-                                PhoneStateListener.LISTEN_SIGNAL_STRENGTHS) &&
-                            idMatch(r.subId, subId, phoneId)) {
-                        try {
-                            if (DBG) {
-                                log("notifySignalStrengthForPhoneId: callback.onSsS r=" + r
-                                        + " subId=" + subId + " phoneId=" + phoneId
-                                        + " ss=" + signalStrength);
-                            }
-                            r.callback.onSignalStrengthsChanged(new SignalStrength(signalStrength));
-                        } catch (RemoteException ex) {
-                            mRemoveList.add(r.binder);
+                mSignalStrengthPendingSubId[phoneId] = subId;
+                if (mSignalStrengthPending[phoneId]) {
+                    mSignalStrengthCoalescedCount++;
+                } else {
+                    mSignalStrengthPending[phoneId] = true;
+                    mNotifyHandler.obtainMessage(MSG_NOTIFY_SIGNAL_STRENGTH, phoneId, 0)
+                            .sendToTarget();
+                }
+            } else {
+                log("notifySignalStrengthForPhoneId: invalid phoneId=" + phoneId);
+            }
+        }
+        broadcastSignalStrengthChanged(signalStrength, phoneId, subId);
+    }
+
+    /**
+     * Sends the latest signal strength of a phone to the listeners.
+     */
+    private void dispatchSignalStrength(int phoneId) {
+        synchronized (mRecords) {
+            if (!mSignalStrengthPending[phoneId]) {
+                return;
+            }
+            mSignalStrengthPending[phoneId] = false;
+            mSignalStrengthNotifyCount++;
+            final int subId = mSignalStrengthPendingSubId[phoneId];
+            final SignalStrength signalStrength = mSignalStrength[phoneId];
+            for (Record r : mRecords) {
+                if (VDBG) {
+                    log("notifySignalStrengthForPhoneId: r=" + r + " subId=" + subId
+                            + " phoneId=" + phoneId + " ss=" + signalStrength);
+                }
+                if (r.matchPhoneStateListenerEvent(
+                            PhoneStateListener.LISTEN_SIGNAL_STRENGTHS) &&
+                        idMatch(r.subId, subId, phoneId)) {
+                    try {
+                        if (DBG) {
+                            log("notifySignalStrengthForPhoneId: callback.onSsS r=" + r
+                                    + " subId=" + subId + " phoneId=" + phoneId
+                                    + " ss=" + signalStrength);
                         }
+                        r.callback.onSignalStrengthsChanged(new SignalStrength(signalStrength));
+                    } catch (RemoteException ex) {
+                        mRemoveList.add(r.binder);
                     }
-                    if (r.matchPhoneStateListenerEvent(PhoneStateListener.LISTEN_SIGNAL_STRENGTH) &&
-                            idMatch(r.subId, subId, phoneId)){
-                        try {
-                            int gsmSignalStrength = signalStrength.getGsmSignalStrength();
-                            int ss = (gsmSignalStrength == 99 ? -1 : gsmSignalStrength);
-                            if (DBG) {
-                                log("notifySignalStrengthForPhoneId: callback.onSS r=" + r
-                                        + " subId=" + subId + " phoneId=" + phoneId
-                                        + " gsmSS=" + gsmSignalStrength + " ss=" + ss);
-                            }
-                            r.callback.onSignalStrengthChanged(ss);
-                        } catch (RemoteException ex) {
-                            mRemoveList.add(r.binder);
+                }
+                if (r.matchPhoneStateListenerEvent(PhoneStateListener.LISTEN_SIGNAL_STRENGTH) &&
+                        idMatch(r.subId, subId, phoneId)){
+                    try {
+                        int gsmSignalStrength = signalStrength.getGsmSignalStrength();
+                        int ss = (gsmSignalStrength == 99 ? -1 : gsmSignalStrength);
+                        if (DBG) {
+                            log("notifySignalStrengthForPhoneId: callback.onSS r=" + r
+                                    + " subId=" + subId + " phoneId=" + phoneId
+                                    + " gsmSS=" + gsmSignalStrength + " ss=" + ss);
                         }
+                        r.callback.onSignalStrengthChanged(ss);
+                    } catch (RemoteException ex) {
+                        mRemoveList.add(r.binder);
                     }
                 }
-            } else {
-                log("notifySignalStrengthForPhoneId: invalid phoneId=" + phoneId);
             }
             handleRemoveListLocked();
         }
-        broadcastSignalStrengthChanged(signalStrength, phoneId, subId);
     }
 
     @Override
@@ -974,17 +1032,39 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
             int phoneId = SubscriptionManager.getPhoneId(subId);
             if (validatePhoneId(phoneId)) {
                 mCellInfo.set(phoneId, cellInfo);
-                for (Record r : mRecords) {
-                    if (validateEventsAndUserLocked(r, PhoneStateListener.LISTEN_CELL_INFO) &&
-                            idMatch(r.subId, subId, phoneId)) {
-                        try {
-                            if (DBG_LOC) {
-                                log("notifyCellInfo: mCellInfo=" + cellInfo + " r=" + r);
-                            }
-                            r.callback.onCellInfoChanged(cellInfo);
-                        } catch (RemoteException ex) {
-                            mRemoveList.add(r.binder);
+                mCellInfoPendingSubId[phoneId] = subId;
+                if (mCellInfoPending[phoneId]) {
+                    mCellInfoCoalescedCount++;
+                } else {
+                    mCellInfoPending[phoneId] = true;
+                    mNotifyHandler.obtainMessage(MSG_NOTIFY_CELL_INFO, phoneId, 0).sendToTarget();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the latest cell info of a phone to the listeners.
+     */
+    private void dispatchCellInfo(int phoneId) {
+        synchronized (mRecords) {
+            if (!mCellInfoPending[phoneId]) {
+                return;
+            }
+            mCellInfoPending[phoneId] = false;
+            mCellInfoNotifyCount++;
+            final int subId = mCellInfoPendingSubId[phoneId];
+            final List<CellInfo> cellInfo = mCellInfo.get(phoneId);
+            for (Record r : mRecords) {
+                if (validateEventsAndUserLocked(r, PhoneStateListener.LISTEN_CELL_INFO) &&
+                        idMatch(r.subId, subId, phoneId)) {
+                    try {
+                        if (DBG_LOC) {
+                            log("notifyCellInfo: mCellInfo=" + cellInfo + " r=" + r);
                         }
+                        r.callback.onCellInfoChanged(cellInfo);
+                    } catch (RemoteException ex) {
+                        mRemoveList.add(r.binder);
                     }
                 }
             }
@@ -1434,6 +1514,15 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
 
             pw.decreaseIndent();
 
+            pw.println("notifications:");
+            pw.increaseIndent();
+            pw.println("signalStrength sent=" + mSignalStrengthNotifyCount
+                    + " coalesced=" + mSignalStrengthCoalescedCount);
+            pw.println("cellInfo sent=" + mCellInfoNotifyCount
+                    + " coalesced=" + mCellInfoCoalescedCount);
+            pw.println("dead listeners removed=" + mRemovedListenerCount);
+            pw.decreaseIndent();
+
             pw.println("local logs:");
             pw.increaseIndent();
             mLocalLog.dump(fd, pw, args);
@@ -1700,6 +1789,7 @@ class TelephonyRegistry extends ITelephonyRegistry.Stub {
                 remove(b);
             }
             mRemoveList.clear();
+            mRemovedListenerCount += size;
         }
     }
 
@@ -29,8 +29,10 @@ import android.util.AtomicFile;
 import android.util.Slog;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseLongArray;
 import android.util.Xml;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.FastXmlSerializer;
 import com.android.internal.util.XmlUtils;
@@ -42,6 +44,7 @@ import org.xmlpull.v1.XmlSerializer;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -53,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.zip.CRC32;
 
 import static android.app.ActivityManager.StackId.HOME_STACK_ID;
 import static android.app.ActivityManager.StackId.INVALID_STACK_ID;
@@ -105,6 +109,18 @@ public class TaskPersister {
 
     private final LazyTaskWriterThread mLazyTaskWriterThread;
 
+    /** Returned by {@link #getTaskFileChecksum} for tasks without a known file. */
+    private static final long NO_CHECKSUM = -1;
+
+    /**
+     * Checksums of the task files last written or restored, per user and task id, see
+     * {@link #checksum}. Tasks are persisted whenever anything about them may have changed, which
+     * most of the time isn't something that ends up in the file, so this is used to skip
+     * rewriting identical files without keeping the contents of every file in memory.
+     */
+    @GuardedBy("mTaskFileChecksums")
+    private final SparseArray<SparseLongArray> mTaskFileChecksums = new SparseArray<>();
+
     private static class WriteQueueItem {}
 
     private static class TaskWriteQueueItem extends WriteQueueItem {
@@ -251,6 +267,53 @@ public class TaskPersister {
 
     void unloadUserDataFromMemory(int userId) {
         mTaskIdsInFile.delete(userId);
+        synchronized (mTaskFileChecksums) {
+            mTaskFileChecksums.delete(userId);
+        }
+    }
+
+    /**
+     * @return the length of {@code data} in the upper and its CRC-32 in the lower 32 bits, which
+     *         is never {@link #NO_CHECKSUM}.
+     */
+    private static long checksum(byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        return ((long) data.length << 32) | crc.getValue();
+    }
+
+    private long getTaskFileChecksum(int userId, int taskId) {
+        synchronized (mTaskFileChecksums) {
+            final SparseLongArray checksums = mTaskFileChecksums.get(userId);
+            return checksums != null ? checksums.get(taskId, NO_CHECKSUM) : NO_CHECKSUM;
+        }
+    }
+
+    private void setTaskFileChecksum(int userId, int taskId, long checksum) {
+        synchronized (mTaskFileChecksums) {
+            SparseLongArray checksums = mTaskFileChecksums.get(userId);
+            if (checksums == null) {
+                checksums = new SparseLongArray();
+                mTaskFileChecksums.put(userId, checksums);
+            }
+            checksums.put(taskId, checksum);
+        }
+    }
+
+    /**
+     * Forgets the file checksums of the tasks that are no longer persisted.
+     */
+    private void trimTaskFileChecksums(ArraySet<Integer> persistentTaskIds) {
+        synchronized (mTaskFileChecksums) {
+            for (int i = mTaskFileChecksums.size() - 1; i >= 0; i--) {
+                final SparseLongArray checksums = mTaskFileChecksums.valueAt(i);
+                for (int j = checksums.size() - 1; j >= 0; j--) {
+                    if (!persistentTaskIds.contains(checksums.keyAt(j))) {
+                        checksums.removeAt(j);
+                    }
+                }
+            }
+        }
     }
 
     void wakeup(TaskRecord task, boolean flush) {
@@ -447,12 +510,13 @@ public class TaskPersister {
                 continue;
             }
 
-            BufferedReader reader = null;
             boolean deleteFile = false;
             try {
-                reader = new BufferedReader(new FileReader(taskFile));
+                // Read the whole file at once; its checksum is kept to tell whether later writes
+                // of the task change anything.
+                final byte[] data = IoUtils.readFileAsByteArray(taskFile.getPath());
                 final XmlPullParser in = Xml.newPullParser();
-                in.setInput(reader);
+                in.setInput(new ByteArrayInputStream(data), null);
 
                 int event;
                 while (((event = in.next()) != XmlPullParser.END_DOCUMENT) &&
@@ -486,6 +550,7 @@ public class TaskPersister {
                                     task.isPersistable = true;
                                     tasks.add(task);
                                     recoveredTaskIds.add(taskId);
+                                    setTaskFileChecksum(userId, taskId, checksum(data));
                                 }
                             } else {
                                 Slog.e(TAG, "restoreTasksForUserLocked: Unable to restore taskFile="
@@ -503,7 +568,6 @@ public class TaskPersister {
                 Slog.e(TAG, "Failing file: " + fileToString(taskFile));
                 deleteFile = true;
             } finally {
-                IoUtils.closeQuietly(reader);
                 if (deleteFile) {
                     if (DEBUG) Slog.d(TAG, "Deleting file=" + taskFile.getName());
                     taskFile.delete();
@@ -599,6 +663,7 @@ public class TaskPersister {
             removeObsoleteFiles(persistentTaskIds, getUserImagesDir(userId).listFiles());
             removeObsoleteFiles(persistentTaskIds, getUserTasksDir(userId).listFiles());
         }
+        trimTaskFileChecksums(persistentTaskIds);
     }
 
     static Bitmap restoreImage(String filename) {
@@ -756,16 +821,23 @@ public class TaskPersister {
                     }
                     if (stringWriter != null) {
                         // Write out xml file while not holding mService lock.
+                        final byte[] data = (stringWriter.toString() + '\n').getBytes();
+                        final File taskFile = new File(getUserTasksDir(task.userId),
+                                String.valueOf(task.taskId) + TASK_FILENAME_SUFFIX);
+                        final long checksum = checksum(data);
+                        if (checksum == getTaskFileChecksum(task.userId, task.taskId)
+                                && taskFile.exists()) {
+                            if (DEBUG) Slog.d(TAG, "Task unchanged, not writing task=" + task);
+                            continue;
+                        }
                         FileOutputStream file = null;
                         AtomicFile atomicFile = null;
                         try {
-                            atomicFile = new AtomicFile(new File(
-                                    getUserTasksDir(task.userId),
-                                    String.valueOf(task.taskId) + TASK_FILENAME_SUFFIX));
+                            atomicFile = new AtomicFile(taskFile);
                             file = atomicFile.startWrite();
-                            file.write(stringWriter.toString().getBytes());
-                            file.write('\n');
+                            file.write(data);
                             atomicFile.finishWrite(file);
+                            setTaskFileChecksum(task.userId, task.taskId, checksum);
                         } catch (IOException e) {
                             if (file != null) {
                                 atomicFile.failWrite(file);
@@ -35,6 +35,7 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.FileUtils;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Parcel;
@@ -47,13 +48,19 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.FastXmlSerializer;
 
+import libcore.io.IoUtils;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -133,6 +140,12 @@ public class SyncStorageEngine extends Handler {
     private static final int MSG_WRITE_STATUS = 1;
     private static final long WRITE_STATUS_DELAY = 1000*60*10; // 10 minutes
 
+    /** Number of records the status journal may hold before the status file is rewritten. */
+    private static final int MAX_STATUS_JOURNAL_RECORDS = 64;
+
+    /** Larger status journal records can only be garbage. */
+    private static final int MAX_STATUS_JOURNAL_RECORD_SIZE = 64 * 1024;
+
     private static final int MSG_WRITE_STATISTICS = 2;
     private static final long WRITE_STATISTICS_DELAY = 1000*60*30; // 1/2 hour
 
@@ -447,6 +460,14 @@ public class SyncStorageEngine extends Handler {
      */
     private final AtomicFile mStatusFile;
 
+    /**
+     * Status changes that should not wait for the next write of {@link #mStatusFile} are
+     * appended to this file, one authority at a time, and applied on top of the status file
+     * when reading it back. It is deleted whenever the status file is written.
+     */
+    private final File mStatusJournalFile;
+    private int mStatusJournalRecords;
+
     /**
      * This file contains sync statistics.  This is purely debugging information
      * so is written infrequently and can be thrown away at any time.
@@ -479,6 +500,7 @@ public class SyncStorageEngine extends Handler {
 
         mAccountInfoFile = new AtomicFile(new File(syncDir, "accounts.xml"));
         mStatusFile = new AtomicFile(new File(syncDir, "status.bin"));
+        mStatusJournalFile = new File(syncDir, "status-journal.bin");
         mStatisticsFile = new AtomicFile(new File(syncDir, "stats.bin"));
 
         readAccountInfoLocked();
@@ -1185,8 +1207,9 @@ public class SyncStorageEngine extends Handler {
             }
 
             if (writeStatusNow) {
-                writeStatusLocked();
-            } else if (!hasMessages(MSG_WRITE_STATUS)) {
+                appendStatusLocked(status);
+            }
+            if (!hasMessages(MSG_WRITE_STATUS)) {
                 sendMessageDelayed(obtainMessage(MSG_WRITE_STATUS),
                         WRITE_STATUS_DELAY);
             }
@@ -2074,6 +2097,105 @@ public class SyncStorageEngine extends Handler {
         } catch (java.io.IOException e) {
             Slog.i(TAG, "No initial status");
         }
+        readStatusJournalLocked();
+    }
+
+    /**
+     * Apply the status records appended to the journal since the status file was last written.
+     * If a record is cut short, e.g. by a crash while it was appended, or is corrupt, the records
+     * before it are kept and the status file is rewritten, which truncates the journal so that
+     * later records aren't appended after the bad one.
+     */
+    private void readStatusJournalLocked() {
+        mStatusJournalRecords = 0;
+        if (!mStatusJournalFile.exists()) {
+            return;
+        }
+        final long length = mStatusJournalFile.length();
+        long position = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(mStatusJournalFile)));
+            while (position < length) {
+                final int size = length - position >= 4 ? in.readInt() : -1;
+                if (size < 0 || size > MAX_STATUS_JOURNAL_RECORD_SIZE
+                        || size > length - position - 4) {
+                    Slog.w(TAG, "Bad status journal record of size " + size + " at " + position);
+                    break;
+                }
+                final byte[] data = new byte[size];
+                in.readFully(data);
+                final Parcel parcel = Parcel.obtain();
+                try {
+                    parcel.unmarshall(data, 0, data.length);
+                    parcel.setDataPosition(0);
+                    final SyncStatusInfo status = new SyncStatusInfo(parcel);
+                    if (mAuthorities.indexOfKey(status.authorityId) >= 0) {
+                        status.pending = false;
+                        mSyncStatus.put(status.authorityId, status);
+                    }
+                } finally {
+                    parcel.recycle();
+                }
+                position += 4 + size;
+                mStatusJournalRecords++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Slog.w(TAG, "Error reading status journal", e);
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+        if (position != length) {
+            writeStatusLocked();
+            if (mStatusJournalFile.exists()) {
+                // The status file couldn't be written; drop the bad record at least.
+                try (RandomAccessFile file = new RandomAccessFile(mStatusJournalFile, "rw")) {
+                    file.setLength(position);
+                } catch (IOException e) {
+                    Slog.w(TAG, "Error truncating status journal", e);
+                    mStatusJournalFile.delete();
+                    mStatusJournalRecords = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Persist the status of a single authority without rewriting the whole status file.
+     */
+    private void appendStatusLocked(SyncStatusInfo status) {
+        if (mStatusJournalRecords >= MAX_STATUS_JOURNAL_RECORDS) {
+            writeStatusLocked();
+            return;
+        }
+        if (Log.isLoggable(TAG_FILE, Log.VERBOSE)) {
+            Slog.v(TAG_FILE, "Appending status for id " + status.authorityId);
+        }
+        final Parcel parcel = Parcel.obtain();
+        DataOutputStream out = null;
+        boolean appended = false;
+        try {
+            status.writeToParcel(parcel, 0);
+            final byte[] data = parcel.marshall();
+            final FileOutputStream fos = new FileOutputStream(mStatusJournalFile, true);
+            out = new DataOutputStream(fos);
+            out.writeInt(data.length);
+            out.write(data);
+            out.flush();
+            FileUtils.sync(fos);
+            appended = true;
+        } catch (IOException e) {
+            Slog.w(TAG, "Error appending status", e);
+        } finally {
+            IoUtils.closeQuietly(out);
+            parcel.recycle();
+        }
+        if (appended) {
+            mStatusJournalRecords++;
+        } else {
+            writeStatusLocked();
+        }
     }
 
     /**
@@ -2103,6 +2225,10 @@ public class SyncStorageEngine extends Handler {
             out.recycle();
 
             mStatusFile.finishWrite(fos);
+
+            // Everything in the journal is in the status file now.
+            mStatusJournalFile.delete();
+            mStatusJournalRecords = 0;
         } catch (java.io.IOException e1) {
             Slog.w(TAG, "Error writing status", e1);
             if (fos != null) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.location;
+
+import android.location.Geofence;
+import android.location.Location;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+
+/**
+ * Groups {@link GeofenceState}s into a grid of latitude/longitude cells, so that a location
+ * update only needs to evaluate the fences in cells near the location.
+ *
+ * For every cell the index knows the largest fence radius and a conservative bound on the
+ * distance from any location to the fence centers in the cell, which is enough to tell whether a
+ * fence in the cell could contain the location, and how close its boundary could be. The cells
+ * are sorted with a cheap spherical bound; the exact geodesic distance, which is much slower to
+ * compute, is only used for the cells that can't be ruled out with it, see
+ * {@link #refineDistance}.
+ */
+class GeofenceIndex {
+    /** Size of a cell, about 5.5km at the equator. */
+    static final double CELL_DEGREES = 0.05;
+
+    private static final int LON_CELLS = (int) Math.ceil(360 / CELL_DEGREES) + 1;
+
+    /**
+     * Radius of a sphere on which distances are shorter than on the WGS84 ellipsoid, whose
+     * smallest radius of curvature is about 6335km.
+     */
+    private static final double LOWER_BOUND_EARTH_RADIUS = 6300000;
+
+    private final LongSparseArray<Cell> mCells = new LongSparseArray<>();
+    private final ArrayList<Cell> mSortedCells = new ArrayList<>();
+    private final float[] mResults = new float[1];
+    private int mSize;
+
+    static final class Cell {
+        final double mCenterLatitude;
+        final double mCenterLongitude;
+        /** Upper bound of the distance from the center to any point of the cell, in meters. */
+        final double mRadius;
+        final ArrayList<GeofenceState> mFences = new ArrayList<>();
+        float mMaxFenceRadius;
+        /** Number of fences for which {@link GeofenceState#needsUpdate} is true. */
+        int mUnresolved;
+        /**
+         * Lower bound of the distance to the fence centers, set by {@link #sortCells} and
+         * {@link #refineDistance}.
+         */
+        double mDistance;
+
+        Cell(double centerLatitude, double centerLongitude, double radius) {
+            mCenterLatitude = centerLatitude;
+            mCenterLongitude = centerLongitude;
+            mRadius = radius;
+        }
+
+        /**
+         * Lower bound of the distance from the last location passed to {@link #sortCells} to
+         * the boundary of any fence in this cell that does not contain it.
+         */
+        double getBoundaryDistance() {
+            return mDistance - mMaxFenceRadius;
+        }
+
+        /** Recounts the unresolved fences after they have processed a location. */
+        void updateUnresolved() {
+            int unresolved = 0;
+            for (int i = mFences.size() - 1; i >= 0; i--) {
+                if (mFences.get(i).needsUpdate()) {
+                    unresolved++;
+                }
+            }
+            mUnresolved = unresolved;
+        }
+    }
+
+    void add(GeofenceState state) {
+        final Geofence fence = state.mFence;
+        final long key = getKey(fence.getLatitude(), fence.getLongitude());
+        Cell cell = mCells.get(key);
+        if (cell == null) {
+            cell = createCell(key);
+            mCells.put(key, cell);
+        }
+        cell.mFences.add(state);
+        cell.mMaxFenceRadius = Math.max(cell.mMaxFenceRadius, fence.getRadius());
+        if (state.needsUpdate()) {
+            cell.mUnresolved++;
+        }
+        mSize++;
+    }
+
+    void remove(GeofenceState state) {
+        final Geofence fence = state.mFence;
+        final long key = getKey(fence.getLatitude(), fence.getLongitude());
+        final Cell cell = mCells.get(key);
+        if (cell == null || !cell.mFences.remove(state)) {
+            return;
+        }
+        mSize--;
+        if (cell.mFences.isEmpty()) {
+            mCells.remove(key);
+            return;
+        }
+        if (state.needsUpdate()) {
+            cell.mUnresolved--;
+        }
+        if (fence.getRadius() >= cell.mMaxFenceRadius) {
+            float maxRadius = 0;
+            for (int i = cell.mFences.size() - 1; i >= 0; i--) {
+                maxRadius = Math.max(maxRadius, cell.mFences.get(i).mFence.getRadius());
+            }
+            cell.mMaxFenceRadius = maxRadius;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getCellCount() {
+        return mCells.size();
+    }
+
+    /**
+     * Computes a cheap lower bound of the distance from {@code location} to every cell and
+     * returns the cells, nearest first. The returned list is reused by the next call.
+     */
+    ArrayList<Cell> sortCells(Location location) {
+        final ArrayList<Cell> cells = mSortedCells;
+        cells.clear();
+        final double latitude = Math.toRadians(location.getLatitude());
+        final double longitude = Math.toRadians(location.getLongitude());
+        final double cosLatitude = Math.cos(latitude);
+        for (int i = mCells.size() - 1; i >= 0; i--) {
+            final Cell cell = mCells.valueAt(i);
+            // Haversine formula.
+            final double cellLatitude = Math.toRadians(cell.mCenterLatitude);
+            final double sinHalfDeltaLat = Math.sin((cellLatitude - latitude) / 2);
+            final double sinHalfDeltaLon =
+                    Math.sin((Math.toRadians(cell.mCenterLongitude) - longitude) / 2);
+            final double a = sinHalfDeltaLat * sinHalfDeltaLat
+                    + cosLatitude * Math.cos(cellLatitude) * sinHalfDeltaLon * sinHalfDeltaLon;
+            final double distance =
+                    2 * LOWER_BOUND_EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+            cell.mDistance = Math.max(0, distance - cell.mRadius);
+            cells.add(cell);
+        }
+        cells.sort((a, b) -> Double.compare(a.mDistance, b.mDistance));
+        return cells;
+    }
+
+    /**
+     * Replaces the distance bound of {@code cell} computed by {@link #sortCells} with a tighter
+     * one based on the geodesic distance to {@code location}.
+     */
+    void refineDistance(Cell cell, Location location) {
+        Location.distanceBetween(location.getLatitude(), location.getLongitude(),
+                cell.mCenterLatitude, cell.mCenterLongitude, mResults);
+        cell.mDistance = Math.max(cell.mDistance, mResults[0] - cell.mRadius);
+    }
+
+    private static long getKey(double latitude, double longitude) {
+        final long latIndex = (long) Math.floor((latitude + 90) / CELL_DEGREES);
+        final long lonIndex = (long) Math.floor((longitude + 180) / CELL_DEGREES);
+        return latIndex * LON_CELLS + lonIndex;
+    }
+
+    private Cell createCell(long key) {
+        final double south = (key / LON_CELLS) * CELL_DEGREES - 90;
+        final double west = (key % LON_CELLS) * CELL_DEGREES - 180;
+        final double centerLatitude = south + CELL_DEGREES / 2;
+        final double centerLongitude = west + CELL_DEGREES / 2;
+        // The corner nearest to the equator is the farthest from the center. Geodesic distance
+        // is a metric, so the distance to the center minus this radius is a lower bound of the
+        // distance to any fence center in the cell; pad it to absorb rounding.
+        final double cornerLatitude = Math.abs(south) < Math.abs(south + CELL_DEGREES)
+                ? south : south + CELL_DEGREES;
+        Location.distanceBetween(centerLatitude, centerLongitude, cornerLatitude, west,
+                mResults);
+        return new Cell(centerLatitude, centerLongitude, mResults[0] * 1.01 + 1);
+    }
+}
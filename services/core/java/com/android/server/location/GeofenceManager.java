@@ -17,6 +17,7 @@
 package com.android.server.location;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -84,7 +85,12 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
     /**
      * A list containing all registered geofences.
      */
-    private List<GeofenceState> mFences = new LinkedList<GeofenceState>();
+    private List<GeofenceState> mFences = new ArrayList<GeofenceState>();
+
+    /**
+     * The fences of {@link #mFences}, indexed by location.
+     */
+    private final GeofenceIndex mIndex = new GeofenceIndex();
 
     /**
      * This is set true when we have an active request for {@link Location} updates via
@@ -164,10 +170,12 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
                 if (geofence.equals(w.mFence) && intent.equals(w.mIntent)) {
                     // already exists, remove the old one
                     mFences.remove(i);
+                    mIndex.remove(w);
                     break;
                 }
             }
             mFences.add(state);
+            mIndex.add(state);
             scheduleUpdateFencesLocked();
         }
     }
@@ -186,10 +194,12 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
                     if (fence == null) {
                         // always remove
                         iter.remove();
+                        mIndex.remove(state);
                     } else {
                         // just remove matching fences
                         if (fence.equals(state.mFence)) {
                             iter.remove();
+                            mIndex.remove(state);
                         }
                     }
                 }
@@ -209,6 +219,7 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
                 GeofenceState state = iter.next();
                 if (state.mPackageName.equals(packageName)) {
                     iter.remove();
+                    mIndex.remove(state);
                 }
             }
             scheduleUpdateFencesLocked();
@@ -222,6 +233,7 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
             GeofenceState state = iter.next();
             if (state.mExpireAt < time) {
                 iter.remove();
+                mIndex.remove(state);
             }
         }
     }
@@ -262,11 +274,58 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
         return location;
     }
 
+    /**
+     * @param noteOp whether to note the use of the location app op, rather than only check it,
+     *               because the fence is about to process a location
+     * @return true if the app that added {@code state} may currently use its geofences.
+     */
+    private boolean isFenceAllowedLocked(GeofenceState state, boolean noteOp) {
+        if (mBlacklist.isBlacklisted(state.mPackageName)) {
+            if (D) {
+                Slog.d(TAG, "skipping geofence processing for blacklisted app: "
+                        + state.mPackageName);
+            }
+            return false;
+        }
+
+        int op = LocationManagerService.resolutionLevelToOp(state.mAllowedResolutionLevel);
+        if (op >= 0) {
+            final int mode = noteOp
+                    ? mAppOps.noteOpNoThrow(AppOpsManager.OP_FINE_LOCATION, state.mUid,
+                            state.mPackageName)
+                    : mAppOps.checkOpNoThrow(AppOpsManager.OP_FINE_LOCATION, state.mUid,
+                            state.mPackageName);
+            if (mode != AppOpsManager.MODE_ALLOWED) {
+                if (D) {
+                    Slog.d(TAG, "skipping geofence processing for no op app: "
+                            + state.mPackageName);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the fences of {@code cell} can't matter for a location with the given
+     *         accuracy: a fence can only be entered if it may contain the location, and only be
+     *         exited or resolved if {@link GeofenceState#needsUpdate}. Otherwise it only matters
+     *         if its boundary may be the nearest one.
+     */
+    private static boolean canSkipCell(GeofenceIndex.Cell cell, float accuracy,
+            double minFenceDistance, double minIntervalDistance) {
+        return cell.mUnresolved == 0
+                && cell.mDistance > Math.max(cell.mMaxFenceRadius, accuracy)
+                && (cell.getBoundaryDistance() >= minFenceDistance
+                        || minFenceDistance <= minIntervalDistance);
+    }
+
     /**
      * The geofence update loop. This function removes expired fences, then tests the most
-     * recently-received {@link Location} against each registered {@link GeofenceState}, sending
-     * {@link Intent}s for geofences that have been tripped. It also adjusts the active location
-     * update request with {@link LocationManager} as appropriate for any active geofences.
+     * recently-received {@link Location} against the registered {@link GeofenceState}s near it,
+     * sending {@link Intent}s for geofences that have been tripped. It also adjusts the active
+     * location update request with {@link LocationManager} as appropriate for any active
+     * geofences.
      */
     // Runs on the handler.
     private void updateFences() {
@@ -283,46 +342,61 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
             // via LocationManager.getLastLocation().
             Location location = getFreshLocationLocked();
 
-            // Update all fences.
+            // Update the fences near the location, nearest first.
             // Keep track of the distance to the nearest fence.
             double minFenceDistance = Double.MAX_VALUE;
             boolean needUpdates = false;
-            for (GeofenceState state : mFences) {
-                if (mBlacklist.isBlacklisted(state.mPackageName)) {
-                    if (D) {
-                        Slog.d(TAG, "skipping geofence processing for blacklisted app: "
-                                + state.mPackageName);
+            boolean skippedFences = false;
+            if (location != null) {
+                // Fences nearer than this all result in the most frequent update interval.
+                final double minIntervalDistance =
+                        (double) mEffectiveMinIntervalMs * MAX_SPEED_M_S / 1000;
+                final float accuracy = location.getAccuracy();
+                for (GeofenceIndex.Cell cell : mIndex.sortCells(location)) {
+                    if (canSkipCell(cell, accuracy, minFenceDistance, minIntervalDistance)) {
+                        skippedFences = true;
+                        continue;
                     }
-                    continue;
-                }
-
-                int op = LocationManagerService.resolutionLevelToOp(state.mAllowedResolutionLevel);
-                if (op >= 0) {
-                    if (mAppOps.noteOpNoThrow(AppOpsManager.OP_FINE_LOCATION, state.mUid,
-                            state.mPackageName) != AppOpsManager.MODE_ALLOWED) {
-                        if (D) {
-                            Slog.d(TAG, "skipping geofence processing for no op app: "
-                                    + state.mPackageName);
-                        }
+                    // The cells are sorted by a rough distance; the exact one may still show
+                    // that the cell doesn't matter.
+                    mIndex.refineDistance(cell, location);
+                    if (canSkipCell(cell, accuracy, minFenceDistance, minIntervalDistance)) {
+                        skippedFences = true;
                         continue;
                     }
-                }
+                    for (GeofenceState state : cell.mFences) {
+                        state.mDenied = !isFenceAllowedLocked(state, true);
+                        if (state.mDenied) {
+                            continue;
+                        }
 
-                needUpdates = true;
-                if (location != null) {
-                    int event = state.processLocation(location);
-                    if ((event & GeofenceState.FLAG_ENTER) != 0) {
-                        enterIntents.add(state.mIntent);
-                    }
-                    if ((event & GeofenceState.FLAG_EXIT) != 0) {
-                        exitIntents.add(state.mIntent);
-                    }
+                        needUpdates = true;
+                        int event = state.processLocation(location);
+                        if ((event & GeofenceState.FLAG_ENTER) != 0) {
+                            enterIntents.add(state.mIntent);
+                        }
+                        if ((event & GeofenceState.FLAG_EXIT) != 0) {
+                            exitIntents.add(state.mIntent);
+                        }
 
-                    // FIXME: Ideally this code should take into account the accuracy of the
-                    // location fix that was used to calculate the distance in the first place.
-                    double fenceDistance = state.getDistanceToBoundary(); // MAX_VALUE if unknown
-                    if (fenceDistance < minFenceDistance) {
-                        minFenceDistance = fenceDistance;
+                        // FIXME: Ideally this code should take into account the accuracy of the
+                        // location fix that was used to calculate the distance in the first
+                        // place.
+                        // MAX_VALUE if unknown
+                        double fenceDistance = state.getDistanceToBoundary();
+                        if (fenceDistance < minFenceDistance) {
+                            minFenceDistance = fenceDistance;
+                        }
+                    }
+                    cell.updateUnresolved();
+                }
+            }
+            if (!needUpdates && (location == null || skippedFences)) {
+                // Updates are still needed if any fence that was not evaluated is allowed.
+                for (GeofenceState state : mFences) {
+                    if (isFenceAllowedLocked(state, false)) {
+                        needUpdates = true;
+                        break;
                     }
                 }
             }
@@ -452,6 +526,9 @@ public class GeofenceManager implements LocationListener, PendingIntent.OnFinish
             pw.append(state.mFence.toString());
             pw.append("\n");
         }
+        pw.append("  Geofence index: ").append(String.valueOf(mIndex.size()))
+                .append(" fences in ").append(String.valueOf(mIndex.getCellCount()))
+                .append(" cells\n");
     }
 
     private final class GeofenceHandler extends Handler {
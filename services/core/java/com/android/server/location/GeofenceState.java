@@ -42,6 +42,7 @@ public class GeofenceState {
 
     int mState;  // current state
     double mDistanceToCenter;  // current distance to center of fence
+    boolean mDenied;  // whether the app was not allowed to use the fence at the last update
 
     public GeofenceState(Geofence fence, long expireAt,
             int allowedResolutionLevel, int uid, String packageName, PendingIntent intent) {
@@ -84,6 +85,22 @@ public class GeofenceState {
         return 0;
     }
 
+    /**
+     * @return true if the last processed location was outside of the fence.
+     */
+    public boolean isOutside() {
+        return mState == STATE_OUTSIDE;
+    }
+
+    /**
+     * @return false if the fence can't produce an event for a location that is outside of it:
+     *         it is known to be outside, or its app was not allowed to use it and it wasn't
+     *         inside, so that entering it is the next possible event.
+     */
+    public boolean needsUpdate() {
+        return mDenied ? mState == STATE_INSIDE : mState != STATE_OUTSIDE;
+    }
+
     /**
      * Gets the distance from the current location to the fence's boundary.
      * @return The distance or {@link Double#MAX_VALUE} if unknown.
@@ -379,6 +379,19 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
     @GuardedBy("mUidRulesFirstLock")
     final SparseBooleanArray mFirewallChainStates = new SparseBooleanArray();
 
+    /**
+     * Chains whose full set of uid rules has been sent to netd at least once, so that their
+     * {@code mUidFirewall*Rules} reflect what netd has.
+     */
+    @GuardedBy("mUidRulesFirstLock")
+    final SparseBooleanArray mFirewallChainRulesSynced = new SparseBooleanArray();
+    /**
+     * Chain states last requested through {@link #setUidFirewallRulesAsync}, which the handler
+     * may not have applied yet.
+     */
+    @GuardedBy("mUidRulesFirstLock")
+    final SparseBooleanArray mFirewallChainRequestedStates = new SparseBooleanArray();
+
     /**
      * UIDs that have been white-listed to always be able to have network access
      * in power save mode, except device idle (doze) still applies.
@@ -2874,8 +2887,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         if (enabled) {
             // Sync the whitelists before enabling the chain.  We don't care about the rules if
             // we are disabling the chain.
-            final SparseIntArray uidRules = rules;
-            uidRules.clear();
+            final SparseIntArray uidRules = new SparseIntArray(rules.size());
             final List<UserInfo> users = mUserManager.getUsers();
             for (int ui = users.size() - 1; ui >= 0; ui--) {
                 UserInfo user = users.get(ui);
@@ -2891,9 +2903,9 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                     uidRules.put(mUidState.keyAt(i), FIREWALL_RULE_ALLOW);
                 }
             }
-            setUidFirewallRulesAsync(chain, uidRules, CHAIN_TOGGLE_ENABLE);
+            syncUidFirewallRulesUL(chain, rules, uidRules, CHAIN_TOGGLE_ENABLE);
         } else {
-            setUidFirewallRulesAsync(chain, null, CHAIN_TOGGLE_DISABLE);
+            syncUidFirewallRulesUL(chain, rules, null, CHAIN_TOGGLE_DISABLE);
         }
     }
 
@@ -2940,8 +2952,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
     void updateRulesForAppIdleUL() {
         Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForAppIdleUL");
         try {
-            final SparseIntArray uidRules = mUidFirewallStandbyRules;
-            uidRules.clear();
+            final SparseIntArray uidRules = new SparseIntArray(mUidFirewallStandbyRules.size());
 
             // Fully update the app idle firewall chain.
             final List<UserInfo> users = mUserManager.getUsers();
@@ -2960,7 +2971,8 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 }
             }
 
-            setUidFirewallRulesAsync(FIREWALL_CHAIN_STANDBY, uidRules, CHAIN_TOGGLE_NONE);
+            syncUidFirewallRulesUL(FIREWALL_CHAIN_STANDBY, mUidFirewallStandbyRules, uidRules,
+                    CHAIN_TOGGLE_NONE);
         } finally {
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
@@ -3028,8 +3040,10 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         }
         try {
             updateRulesForAppIdleUL();
-            updateRulesForRestrictPowerUL();
-            updateRulesForRestrictBackgroundUL();
+            updateRulesForDeviceIdleUL();
+            updateRulesForPowerSaveUL();
+            // Evaluate both kinds of restrictions in a single pass over the installed apps.
+            updateRulesForAllAppsUL(TYPE_RESTRICT_POWER | TYPE_RESTRICT_BACKGROUND);
 
             // If the set of restricted networks may have changed, re-evaluate those.
             if (restrictedNetworksChanged) {
@@ -3065,7 +3079,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
     private static final int TYPE_RESTRICT_BACKGROUND = 1;
     private static final int TYPE_RESTRICT_POWER = 2;
     @Retention(RetentionPolicy.SOURCE)
-    @IntDef(flag = false, value = {
+    @IntDef(flag = true, value = {
             TYPE_RESTRICT_BACKGROUND,
             TYPE_RESTRICT_POWER,
     })
@@ -3073,9 +3087,9 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
     }
 
     // TODO: refactor / consolidate all those updateXyz methods, there are way too many of them...
-    private void updateRulesForAllAppsUL(@RestrictType int type) {
+    private void updateRulesForAllAppsUL(@RestrictType int types) {
         if (Trace.isTagEnabled(Trace.TRACE_TAG_NETWORK)) {
-            Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForRestrictPowerUL-" + type);
+            Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForRestrictPowerUL-" + types);
         }
         try {
             // update rules for all installed applications
@@ -3100,22 +3114,23 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
             }
 
+            // Apps sharing a uid only need their rules evaluated once.
+            final SparseBooleanArray appIds = new SparseBooleanArray(apps.size());
+            for (int j = apps.size() - 1; j >= 0; j--) {
+                appIds.put(UserHandle.getAppId(apps.get(j).uid), true);
+            }
+
             final int usersSize = users.size();
-            final int appsSize = apps.size();
+            final int appIdsSize = appIds.size();
             for (int i = 0; i < usersSize; i++) {
                 final UserInfo user = users.get(i);
-                for (int j = 0; j < appsSize; j++) {
-                    final ApplicationInfo app = apps.get(j);
-                    final int uid = UserHandle.getUid(user.id, app.uid);
-                    switch (type) {
-                        case TYPE_RESTRICT_BACKGROUND:
-                            updateRulesForDataUsageRestrictionsUL(uid);
-                            break;
-                        case TYPE_RESTRICT_POWER:
-                            updateRulesForPowerRestrictionsUL(uid);
-                            break;
-                        default:
-                            Slog.w(TAG, "Invalid type for updateRulesForAllApps: " + type);
+                for (int j = 0; j < appIdsSize; j++) {
+                    final int uid = UserHandle.getUid(user.id, appIds.keyAt(j));
+                    if ((types & TYPE_RESTRICT_POWER) != 0) {
+                        updateRulesForPowerRestrictionsUL(uid);
+                    }
+                    if ((types & TYPE_RESTRICT_BACKGROUND) != 0) {
+                        updateRulesForDataUsageRestrictionsUL(uid);
                     }
                 }
             }
@@ -3443,8 +3458,9 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
             return RULE_NONE;
         }
 
-        final boolean isIdle = !paroled && isUidIdle(uid);
-        final boolean restrictMode = isIdle || mRestrictPower || mDeviceIdleMode;
+        // Looking up the idle state is expensive, and not needed while another mode restricts.
+        final boolean restrictMode = mRestrictPower || mDeviceIdleMode
+                || (!paroled && isUidIdle(uid));
         final boolean isForeground = isUidForegroundOnRestrictPowerUL(uid);
 
         final boolean isWhitelisted = isWhitelistedBatterySaverUL(uid, mDeviceIdleMode);
@@ -3467,7 +3483,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
         if (LOGV) {
             Log.v(TAG, "updateRulesForPowerRestrictionsUL(" + uid + ")"
-                    + ", isIdle: " + isIdle
+                    + ", restrictMode: " + restrictMode
                     + ", mRestrictPower: " + mRestrictPower
                     + ", mDeviceIdleMode: " + mDeviceIdleMode
                     + ", isForeground=" + isForeground
@@ -3819,6 +3835,58 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         mHandler.obtainMessage(MSG_SET_FIREWALL_RULES, chain, toggle, uidRules).sendToTarget();
     }
 
+    /**
+     * Sends the freshly computed rules of a firewall chain to netd, unless netd already has
+     * them.
+     *
+     * @param chain firewall chain.
+     * @param rules the {@code mUidFirewall*Rules} of the chain, updated to {@code newRules}.
+     * @param newRules new UID rules; if {@code null}, only toggles chain state.
+     * @param toggle whether the chain should be enabled, disabled, or not changed.
+     */
+    private void syncUidFirewallRulesUL(int chain, SparseIntArray rules,
+            @Nullable SparseIntArray newRules, @ChainToggleType int toggle) {
+        if (newRules != null) {
+            if (mFirewallChainRulesSynced.get(chain) && uidRulesEqual(rules, newRules)) {
+                newRules = null;
+            } else {
+                rules.clear();
+                for (int i = 0; i < newRules.size(); i++) {
+                    rules.append(newRules.keyAt(i), newRules.valueAt(i));
+                }
+                newRules = rules;
+                mFirewallChainRulesSynced.put(chain, true);
+            }
+        }
+        if (toggle != CHAIN_TOGGLE_NONE) {
+            final boolean enable = toggle == CHAIN_TOGGLE_ENABLE;
+            if (mFirewallChainRequestedStates.indexOfKey(chain) >= 0
+                    && mFirewallChainRequestedStates.get(chain) == enable) {
+                toggle = CHAIN_TOGGLE_NONE;
+            } else {
+                mFirewallChainRequestedStates.put(chain, enable);
+            }
+        }
+        if (newRules == null && toggle == CHAIN_TOGGLE_NONE) {
+            if (LOGV) Log.v(TAG, "firewall chain " + chain + " is unchanged");
+            return;
+        }
+        setUidFirewallRulesAsync(chain, newRules, toggle);
+    }
+
+    private static boolean uidRulesEqual(SparseIntArray a, SparseIntArray b) {
+        final int size = a.size();
+        if (size != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (a.keyAt(i) != b.keyAt(i) || a.valueAt(i) != b.valueAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Set uid rules on a particular firewall chain. This is going to synchronize the rules given
      * here to netd.  It will clean up dead rules and make sure the target chain only contains rules
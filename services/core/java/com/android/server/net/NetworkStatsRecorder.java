@@ -19,6 +19,7 @@ package com.android.server.net;
 import static android.net.NetworkStats.TAG_NONE;
 import static android.net.TrafficStats.KB_IN_BYTES;
 import static android.net.TrafficStats.MB_IN_BYTES;
+import static android.text.format.DateUtils.MINUTE_IN_MILLIS;
 import static android.text.format.DateUtils.YEAR_IN_MILLIS;
 import static com.android.internal.util.Preconditions.checkNotNull;
 
@@ -29,6 +30,7 @@ import android.net.NetworkStatsHistory;
 import android.net.NetworkTemplate;
 import android.net.TrafficStats;
 import android.os.DropBoxManager;
+import android.os.SystemClock;
 import android.service.NetworkStatsRecorderProto;
 import android.util.Log;
 import android.util.MathUtils;
@@ -72,6 +74,13 @@ public class NetworkStatsRecorder {
     /** Dump before deleting in {@link #recoverFromWtf()}. */
     private static final boolean DUMP_BEFORE_DELETE = true;
 
+    /**
+     * How long the complete history stays strongly reachable after it was last requested.
+     * Clients tend to query it several times in a row, and reloading it from disk each time
+     * the GC clears the {@link WeakReference} is expensive.
+     */
+    static final long COMPLETE_RETAIN_MILLIS = 5 * MINUTE_IN_MILLIS;
+
     private final FileRotator mRotator;
     private final NonMonotonicObserver<String> mObserver;
     private final DropBoxManager mDropBox;
@@ -82,6 +91,8 @@ public class NetworkStatsRecorder {
 
     private long mPersistThresholdBytes = 2 * MB_IN_BYTES;
     private NetworkStats mLastSnapshot;
+    /** Delta from the last snapshot, kept to reuse its arrays for the next one. */
+    private NetworkStats mDeltaRecycle;
 
     private final NetworkStatsCollection mPending;
     private final NetworkStatsCollection mSinceBoot;
@@ -89,6 +100,10 @@ public class NetworkStatsRecorder {
     private final CombiningRewriter mPendingRewriter;
 
     private WeakReference<NetworkStatsCollection> mComplete;
+    /** Strong reference to {@link #mComplete} while it is in use, see {@link #trimLocked}. */
+    private NetworkStatsCollection mCompleteRetained;
+    private long mCompleteLastUsed;
+    private int mCompleteLoads;
 
     /**
      * Non-persisted recorder, with only one bucket. Used by {@link NetworkStatsObservers}.
@@ -137,6 +152,7 @@ public class NetworkStatsRecorder {
 
     public void resetLocked() {
         mLastSnapshot = null;
+        mDeltaRecycle = null;
         if (mPending != null) {
             mPending.reset();
         }
@@ -146,6 +162,7 @@ public class NetworkStatsRecorder {
         if (mComplete != null) {
             mComplete.clear();
         }
+        mCompleteRetained = null;
     }
 
     public NetworkStats.Entry getTotalSinceBootLocked(NetworkTemplate template) {
@@ -161,7 +178,8 @@ public class NetworkStatsRecorder {
      * Load complete history represented by {@link FileRotator}. Caches
      * internally as a {@link WeakReference}, and updated with future
      * {@link #recordSnapshotLocked(NetworkStats, Map, long)} snapshots as long
-     * as reference is valid.
+     * as reference is valid. The reference is kept strong until
+     * {@link #trimLocked} finds it unused for {@link #COMPLETE_RETAIN_MILLIS}.
      */
     public NetworkStatsCollection getOrLoadCompleteLocked() {
         checkNotNull(mRotator, "missing FileRotator");
@@ -169,10 +187,28 @@ public class NetworkStatsRecorder {
         if (res == null) {
             res = loadLocked(Long.MIN_VALUE, Long.MAX_VALUE);
             mComplete = new WeakReference<NetworkStatsCollection>(res);
+            mCompleteLoads++;
         }
+        mCompleteRetained = res;
+        mCompleteLastUsed = SystemClock.elapsedRealtime();
         return res;
     }
 
+    /**
+     * Stop holding on to the complete history if it hasn't been requested recently. Called on
+     * every poll, and by the service {@link #COMPLETE_RETAIN_MILLIS} after the last request,
+     * so that the history is let go of even if polls are rare. It stays
+     * cached for as long as the GC leaves the {@link WeakReference} alone, or any session still
+     * uses it.
+     */
+    public void trimLocked(long elapsedRealtime) {
+        if (mCompleteRetained != null
+                && elapsedRealtime - mCompleteLastUsed >= COMPLETE_RETAIN_MILLIS) {
+            if (LOGD) Slog.d(TAG, "trimLocked() releasing complete history for " + mCookie);
+            mCompleteRetained = null;
+        }
+    }
+
     public NetworkStatsCollection getOrLoadPartialLocked(long start, long end) {
         checkNotNull(mRotator, "missing FileRotator");
         NetworkStatsCollection res = mComplete != null ? mComplete.get() : null;
@@ -225,7 +261,8 @@ public class NetworkStatsRecorder {
         final NetworkStatsCollection complete = mComplete != null ? mComplete.get() : null;
 
         final NetworkStats delta = NetworkStats.subtract(
-                snapshot, mLastSnapshot, mObserver, mCookie);
+                snapshot, mLastSnapshot, mObserver, mCookie, mDeltaRecycle);
+        mDeltaRecycle = delta;
         final long end = currentTimeMillis;
         final long start = end - delta.getElapsedRealtime();
 
@@ -458,6 +495,10 @@ public class NetworkStatsRecorder {
         if (mPending != null) {
             pw.print("Pending bytes: "); pw.println(mPending.getTotalBytes());
         }
+        if (mRotator != null) {
+            pw.print("Complete history loads: "); pw.print(mCompleteLoads);
+            pw.print(" retained: "); pw.println(mCompleteRetained != null);
+        }
         if (fullHistory) {
             pw.println("Complete history:");
             getOrLoadCompleteLocked().dump(pw);
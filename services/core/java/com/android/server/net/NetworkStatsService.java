@@ -147,6 +147,7 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
     private static final int MSG_PERFORM_POLL = 1;
     private static final int MSG_UPDATE_IFACES = 2;
     private static final int MSG_REGISTER_GLOBAL_ALERT = 3;
+    private static final int MSG_TRIM_COMPLETE = 4;
 
     /** Flags to control detail level of poll event. */
     private static final int FLAG_PERSIST_NETWORK = 0x1;
@@ -336,7 +337,7 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
 
             // read historical network stats from disk, since policy service
             // might need them right away.
-            mXtStatsCached = mXtRecorder.getOrLoadCompleteLocked();
+            mXtStatsCached = getOrLoadCompleteLocked(mXtRecorder);
 
             // bootstrap initial stats to prevent double-counting later
             bootstrapStatsLocked();
@@ -499,7 +500,7 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
             private NetworkStatsCollection getUidComplete() {
                 synchronized (mStatsLock) {
                     if (mUidComplete == null) {
-                        mUidComplete = mUidRecorder.getOrLoadCompleteLocked();
+                        mUidComplete = getOrLoadCompleteLocked(mUidRecorder);
                     }
                     return mUidComplete;
                 }
@@ -508,7 +509,7 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
             private NetworkStatsCollection getUidTagComplete() {
                 synchronized (mStatsLock) {
                     if (mUidTagComplete == null) {
-                        mUidTagComplete = mUidTagRecorder.getOrLoadCompleteLocked();
+                        mUidTagComplete = getOrLoadCompleteLocked(mUidTagRecorder);
                     }
                     return mUidTagComplete;
                 }
@@ -1097,6 +1098,40 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
         }
     }
 
+    /**
+     * Loads the complete history of {@code recorder}, making sure that it is let go of once it
+     * hasn't been used for a while, even if no poll happens by then.
+     */
+    private NetworkStatsCollection getOrLoadCompleteLocked(NetworkStatsRecorder recorder) {
+        final NetworkStatsCollection complete = recorder.getOrLoadCompleteLocked();
+        scheduleTrimCompleteLocked();
+        return complete;
+    }
+
+    /**
+     * Schedules {@link #trimCompleteLocked} for when the complete histories requested so far
+     * are no longer retained by their recorders.
+     */
+    private void scheduleTrimCompleteLocked() {
+        mHandler.removeMessages(MSG_TRIM_COMPLETE);
+        mHandler.sendEmptyMessageDelayed(MSG_TRIM_COMPLETE,
+                NetworkStatsRecorder.COMPLETE_RETAIN_MILLIS);
+    }
+
+    private void trimComplete() {
+        synchronized (mStatsLock) {
+            trimCompleteLocked();
+        }
+    }
+
+    private void trimCompleteLocked() {
+        final long elapsedRealtime = SystemClock.elapsedRealtime();
+        mDevRecorder.trimLocked(elapsedRealtime);
+        mXtRecorder.trimLocked(elapsedRealtime);
+        mUidRecorder.trimLocked(elapsedRealtime);
+        mUidTagRecorder.trimLocked(elapsedRealtime);
+    }
+
     /**
      * Periodic poll operation, reading current statistics and recording into
      * {@link NetworkStatsHistory}.
@@ -1142,6 +1177,9 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
             }
         }
 
+        // let go of complete histories nobody asked for in a while
+        trimCompleteLocked();
+
         if (LOGV) {
             final long duration = SystemClock.elapsedRealtime() - startRealtime;
             Slog.v(TAG, "performPollLocked() took " + duration + "ms");
@@ -1335,6 +1373,11 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
                 mUidTagRecorder.dumpLocked(pw, fullHistory);
                 pw.decreaseIndent();
             }
+
+            if (fullHistory) {
+                // the full dump loaded the complete histories
+                scheduleTrimCompleteLocked();
+            }
         }
     }
 
@@ -1349,6 +1392,7 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
         mXtRecorder.writeToProtoLocked(proto, NetworkStatsServiceDumpProto.XT_STATS);
         mUidRecorder.writeToProtoLocked(proto, NetworkStatsServiceDumpProto.UID_STATS);
         mUidTagRecorder.writeToProtoLocked(proto, NetworkStatsServiceDumpProto.UID_TAG_STATS);
+        scheduleTrimCompleteLocked();
 
         proto.flush();
     }
@@ -1453,6 +1497,10 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
                     mService.registerGlobalAlert();
                     return true;
                 }
+                case MSG_TRIM_COMPLETE: {
+                    mService.trimComplete();
+                    return true;
+                }
                 default: {
                     return false;
                 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.notification;
+
+import android.os.Handler;
+import android.service.notification.NotificationRankingUpdate;
+import android.service.notification.StatusBarNotification;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.notification.ManagedServices.ManagedServiceInfo;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Per-listener queue of pending notification listener callbacks.
+ *
+ * Successive posts of the same notification key that arrive before the queue is flushed are
+ * collapsed into the most recent one, and a pending post that is followed by a removal is
+ * dropped. Ranking updates are collapsed into the most recent one as well. Everything that is
+ * still pending when the coalescing window expires is delivered from a single handler message.
+ *
+ * {@hide}
+ */
+public class ListenerDeliveryQueue {
+    /** Delivery of the queued events, called on the handler thread. */
+    public interface Callback {
+        void deliverPosted(ManagedServiceInfo info, StatusBarNotification sbn,
+                NotificationRankingUpdate update);
+        void deliverRemoved(ManagedServiceInfo info, StatusBarNotification sbn,
+                NotificationRankingUpdate update, int reason);
+        void deliverRankingUpdate(ManagedServiceInfo info, NotificationRankingUpdate update);
+    }
+
+    // Ranking updates are not tied to a notification, so they share one slot in the queue.
+    private static final String RANKING_KEY = "\u0000ranking";
+
+    private static final int TYPE_POSTED = 0;
+    private static final int TYPE_REMOVED = 1;
+    private static final int TYPE_RANKING = 2;
+
+    private final ManagedServiceInfo mInfo;
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final Runnable mFlushRunnable = this::flush;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Event> mPending = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private boolean mFlushScheduled;
+    @GuardedBy("this")
+    private long mWindowMs;
+    @GuardedBy("this")
+    private int mMaxDepth;
+
+    // Counters, reported in dumpsys.
+    @GuardedBy("this")
+    private long mEnqueued;
+    @GuardedBy("this")
+    private long mDelivered;
+    @GuardedBy("this")
+    private long mCoalesced;
+    @GuardedBy("this")
+    private long mDropped;
+    @GuardedBy("this")
+    private long mOverflows;
+    @GuardedBy("this")
+    private int mMaxObservedDepth;
+
+    public ListenerDeliveryQueue(ManagedServiceInfo info, Handler handler, Callback callback,
+            long windowMs, int maxDepth) {
+        mInfo = info;
+        mHandler = handler;
+        mCallback = callback;
+        mWindowMs = windowMs;
+        mMaxDepth = maxDepth;
+    }
+
+    public synchronized void setWindow(long windowMs, int maxDepth) {
+        mWindowMs = windowMs;
+        mMaxDepth = maxDepth;
+    }
+
+    public void enqueuePosted(StatusBarNotification sbn, NotificationRankingUpdate update) {
+        enqueue(sbn.getKey(), new Event(TYPE_POSTED, sbn, update, 0));
+    }
+
+    public void enqueueRemoved(StatusBarNotification sbn, NotificationRankingUpdate update,
+            int reason) {
+        enqueue(sbn.getKey(), new Event(TYPE_REMOVED, sbn, update, reason));
+    }
+
+    public void enqueueRankingUpdate(NotificationRankingUpdate update) {
+        enqueue(RANKING_KEY, new Event(TYPE_RANKING, null, update, 0));
+    }
+
+    private synchronized void enqueue(String key, Event event) {
+        mEnqueued++;
+        final Event previous = mPending.remove(key);
+        if (previous != null) {
+            if (previous.type == TYPE_POSTED && event.type == TYPE_POSTED) {
+                mCoalesced++;
+            } else {
+                // a superseded ranking update, or a post or removal that the listener never
+                // needs to see because a later event for the same key replaces it
+                mDropped++;
+            }
+        }
+        // Every event carries the complete ranking for this listener, so a pending ranking
+        // update is superseded by anything that comes after it.
+        if (event.type != TYPE_RANKING) {
+            final Event ranking = mPending.remove(RANKING_KEY);
+            if (ranking != null) {
+                mDropped++;
+            }
+        }
+        mPending.put(key, event);
+        final int depth = mPending.size();
+        if (depth > mMaxObservedDepth) {
+            mMaxObservedDepth = depth;
+        }
+
+        if (depth >= mMaxDepth) {
+            // The listener is falling behind; deliver what we have instead of waiting out the
+            // rest of the window.
+            mOverflows++;
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.post(mFlushRunnable);
+            mFlushScheduled = true;
+        } else if (!mFlushScheduled) {
+            mHandler.postDelayed(mFlushRunnable, mWindowMs);
+            mFlushScheduled = true;
+        }
+    }
+
+    /** Drops everything that is pending, e.g. because the listener went away. */
+    public synchronized void clear() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        mDropped += mPending.size();
+        mPending.clear();
+    }
+
+    @VisibleForTesting
+    void flush() {
+        final ArrayList<Event> events;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(mPending.values());
+            mPending.clear();
+            mDelivered += events.size();
+        }
+        final int N = events.size();
+        for (int i = 0; i < N; i++) {
+            final Event event = events.get(i);
+            switch (event.type) {
+                case TYPE_POSTED:
+                    mCallback.deliverPosted(mInfo, event.sbn, event.update);
+                    break;
+                case TYPE_REMOVED:
+                    mCallback.deliverRemoved(mInfo, event.sbn, event.update, event.reason);
+                    break;
+                case TYPE_RANKING:
+                    mCallback.deliverRankingUpdate(mInfo, event.update);
+                    break;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getDepth() {
+        return mPending.size();
+    }
+
+    @VisibleForTesting
+    synchronized long getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    @VisibleForTesting
+    synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    public synchronized void dump(PrintWriter pw, String prefix) {
+        pw.print(prefix); pw.print(mInfo.component.flattenToShortString());
+        pw.print(" (user "); pw.print(mInfo.userid); pw.println("):");
+        pw.print(prefix); pw.print("  depth="); pw.print(mPending.size());
+        pw.print(" maxDepth="); pw.print(mMaxObservedDepth);
+        pw.print(" window="); pw.print(mWindowMs); pw.print("ms");
+        pw.print(" limit="); pw.println(mMaxDepth);
+        pw.print(prefix); pw.print("  enqueued="); pw.print(mEnqueued);
+        pw.print(" delivered="); pw.print(mDelivered);
+        pw.print(" coalesced="); pw.print(mCoalesced);
+        pw.print(" dropped="); pw.print(mDropped);
+        pw.print(" overflows="); pw.println(mOverflows);
+    }
+
+    private static final class Event {
+        final int type;
+        final StatusBarNotification sbn;
+        final NotificationRankingUpdate update;
+        final int reason;
+
+        Event(int type, StatusBarNotification sbn, NotificationRankingUpdate update, int reason) {
+            this.type = type;
+            this.sbn = sbn;
+            this.update = update;
+            this.reason = reason;
+        }
+    }
+}
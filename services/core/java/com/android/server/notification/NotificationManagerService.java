@@ -256,6 +256,11 @@ public class NotificationManagerService extends SystemService {
 
     private static final long DELAY_FOR_ASSISTANT_TIME = 100;
 
+    // How long listener callbacks are held back to coalesce updates of the same notification.
+    static final long DEFAULT_LISTENER_COALESCE_WINDOW_MS = 0;
+    // Pending listener callbacks beyond which a listener's queue is flushed immediately.
+    static final int MAX_LISTENER_QUEUE_DEPTH = 50;
+
     private static final String ACTION_NOTIFICATION_TIMEOUT =
             NotificationManagerService.class.getSimpleName() + ".TIMEOUT";
     private static final int REQUEST_CODE_TIMEOUT = 1;
@@ -927,6 +932,8 @@ public class NotificationManagerService extends SystemService {
                 = Settings.System.getUriFor(Settings.System.NOTIFICATION_LIGHT_PULSE);
         private final Uri NOTIFICATION_RATE_LIMIT_URI
                 = Settings.Global.getUriFor(Settings.Global.MAX_NOTIFICATION_ENQUEUE_RATE);
+        private final Uri NOTIFICATION_LISTENER_COALESCE_URI = Settings.Global.getUriFor(
+                Settings.Global.NOTIFICATION_LISTENER_COALESCE_WINDOW_MS);
 
         SettingsObserver(Handler handler) {
             super(handler);
@@ -940,6 +947,8 @@ public class NotificationManagerService extends SystemService {
                     false, this, UserHandle.USER_ALL);
             resolver.registerContentObserver(NOTIFICATION_RATE_LIMIT_URI,
                     false, this, UserHandle.USER_ALL);
+            resolver.registerContentObserver(NOTIFICATION_LISTENER_COALESCE_URI,
+                    false, this, UserHandle.USER_ALL);
             update(null);
         }
 
@@ -961,6 +970,14 @@ public class NotificationManagerService extends SystemService {
                 mMaxPackageEnqueueRate = Settings.Global.getFloat(resolver,
                             Settings.Global.MAX_NOTIFICATION_ENQUEUE_RATE, mMaxPackageEnqueueRate);
             }
+            if (uri == null || NOTIFICATION_LISTENER_COALESCE_URI.equals(uri)) {
+                final long windowMs = Settings.Global.getLong(resolver,
+                        Settings.Global.NOTIFICATION_LISTENER_COALESCE_WINDOW_MS,
+                        DEFAULT_LISTENER_COALESCE_WINDOW_MS);
+                synchronized (mNotificationLock) {
+                    mListeners.setCoalesceWindowLocked(windowMs);
+                }
+            }
             if (uri == null || NOTIFICATION_BADGING_URI.equals(uri)) {
                 mRankingHelper.updateBadgingEnabled();
             }
@@ -3062,6 +3079,7 @@ public class NotificationManagerService extends SystemService {
 
                 pw.println("\n  Notification listeners:");
                 mListeners.dump(pw, filter);
+                mListeners.dumpDeliveryQueuesLocked(pw, filter);
                 pw.print("    mListenerHints: "); pw.println(mListenerHints);
                 pw.print("    mListenersDisablingEffects: (");
                 N = mListenersDisablingEffects.size();
@@ -5093,9 +5111,15 @@ public class NotificationManagerService extends SystemService {
         }
     }
 
-    public class NotificationListeners extends ManagedServices {
+    public class NotificationListeners extends ManagedServices
+            implements ListenerDeliveryQueue.Callback {
 
         private final ArraySet<ManagedServiceInfo> mLightTrimListeners = new ArraySet<>();
+        @GuardedBy("mNotificationLock")
+        private final ArrayMap<ManagedServiceInfo, ListenerDeliveryQueue> mDeliveryQueues =
+                new ArrayMap<>();
+        @GuardedBy("mNotificationLock")
+        private long mCoalesceWindowMs = DEFAULT_LISTENER_COALESCE_WINDOW_MS;
 
         public NotificationListeners() {
             super(getContext(), mHandler, mNotificationLock, mUserProfiles);
@@ -5145,6 +5169,44 @@ public class NotificationManagerService extends SystemService {
                 updateEffectsSuppressorLocked();
             }
             mLightTrimListeners.remove(removed);
+            final ListenerDeliveryQueue queue = mDeliveryQueues.remove(removed);
+            if (queue != null) {
+                queue.clear();
+            }
+        }
+
+        /**
+         * Sets how long posts, removals and ranking updates for a listener are held back so that
+         * successive updates of the same notification can be collapsed into one callback.
+         */
+        @GuardedBy("mNotificationLock")
+        public void setCoalesceWindowLocked(long windowMs) {
+            mCoalesceWindowMs = Math.max(0, windowMs);
+            for (int i = mDeliveryQueues.size() - 1; i >= 0; i--) {
+                mDeliveryQueues.valueAt(i).setWindow(mCoalesceWindowMs,
+                        MAX_LISTENER_QUEUE_DEPTH);
+            }
+        }
+
+        @GuardedBy("mNotificationLock")
+        private ListenerDeliveryQueue getDeliveryQueueLocked(ManagedServiceInfo info) {
+            ListenerDeliveryQueue queue = mDeliveryQueues.get(info);
+            if (queue == null) {
+                queue = new ListenerDeliveryQueue(info, mHandler, this, mCoalesceWindowMs,
+                        MAX_LISTENER_QUEUE_DEPTH);
+                mDeliveryQueues.put(info, queue);
+            }
+            return queue;
+        }
+
+        @GuardedBy("mNotificationLock")
+        public void dumpDeliveryQueuesLocked(PrintWriter pw, DumpFilter filter) {
+            pw.println("    Listener delivery queues (" + mDeliveryQueues.size() + "):");
+            for (int i = 0; i < mDeliveryQueues.size(); i++) {
+                final ManagedServiceInfo info = mDeliveryQueues.keyAt(i);
+                if (filter != null && !filter.matches(info.component)) continue;
+                mDeliveryQueues.valueAt(i).dump(pw, "      ");
+            }
         }
 
         @GuardedBy("mNotificationLock")
@@ -5184,22 +5246,13 @@ public class NotificationManagerService extends SystemService {
                 // This notification became invisible -> remove the old one.
                 if (oldSbnVisible && !sbnVisible) {
                     final StatusBarNotification oldSbnLightClone = oldSbn.cloneLight();
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            notifyRemoved(info, oldSbnLightClone, update, REASON_USER_STOPPED);
-                        }
-                    });
+                    getDeliveryQueueLocked(info).enqueueRemoved(oldSbnLightClone, update,
+                            REASON_USER_STOPPED);
                     continue;
                 }
 
                 final StatusBarNotification sbnToPost =  trimCache.ForListener(info);
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        notifyPosted(info, sbnToPost, update);
-                    }
-                });
+                getDeliveryQueueLocked(info).enqueuePosted(sbnToPost, update);
             }
         }
 
@@ -5217,12 +5270,7 @@ public class NotificationManagerService extends SystemService {
                     continue;
                 }
                 final NotificationRankingUpdate update = makeRankingUpdateLocked(info);
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        notifyRemoved(info, sbnLight, update, reason);
-                    }
-                });
+                getDeliveryQueueLocked(info).enqueueRemoved(sbnLight, update, reason);
             }
         }
 
@@ -5236,12 +5284,7 @@ public class NotificationManagerService extends SystemService {
                     continue;
                 }
                 final NotificationRankingUpdate update = makeRankingUpdateLocked(serviceInfo);
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        notifyRankingUpdate(serviceInfo, update);
-                    }
-                });
+                getDeliveryQueueLocked(serviceInfo).enqueueRankingUpdate(update);
             }
         }
 
@@ -5319,6 +5362,24 @@ public class NotificationManagerService extends SystemService {
             }
         }
 
+        @Override
+        public void deliverPosted(ManagedServiceInfo info, StatusBarNotification sbn,
+                NotificationRankingUpdate update) {
+            notifyPosted(info, sbn, update);
+        }
+
+        @Override
+        public void deliverRemoved(ManagedServiceInfo info, StatusBarNotification sbn,
+                NotificationRankingUpdate update, int reason) {
+            notifyRemoved(info, sbn, update, reason);
+        }
+
+        @Override
+        public void deliverRankingUpdate(ManagedServiceInfo info,
+                NotificationRankingUpdate update) {
+            notifyRankingUpdate(info, update);
+        }
+
         private void notifyPosted(final ManagedServiceInfo info,
                 final StatusBarNotification sbn, NotificationRankingUpdate rankingUpdate) {
             final INotificationListener listener = (INotificationListener) info.service;
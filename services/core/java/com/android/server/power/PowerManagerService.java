@@ -69,6 +69,7 @@ import android.service.power.WakeLockProto;
 import android.service.vr.IVrManager;
 import android.service.vr.IVrStateCallbacks;
 import android.telephony.TelephonyManager;
+import android.util.ArrayMap;
 import android.util.EventLog;
 import android.util.KeyValueListParser;
 import android.util.Log;
@@ -282,9 +283,13 @@ public final class PowerManagerService extends SystemService
     // There should only be a few of these.
     private final ArrayList<SuspendBlocker> mSuspendBlockers = new ArrayList<SuspendBlocker>();
 
-    // Table of all wake locks acquired by applications.
+    // Table of all wake locks acquired by applications, in no particular order.
     protected final ArrayList<WakeLock> mWakeLocks = new ArrayList<WakeLock>();
 
+    // The same wake locks as in mWakeLocks, by token, so that acquiring, releasing and updating
+    // a wake lock doesn't need to search the list.
+    private final ArrayMap<IBinder, WakeLock> mWakeLocksByToken = new ArrayMap<>();
+
     private Set<String> mSeenWakeLocks = new HashSet<String>();
     private Set<String> mBlockedWakeLocks = new HashSet<String>();
     private int mWakeLockBlockingEnabled;
@@ -1169,11 +1174,9 @@ public final class PowerManagerService extends SystemService
                 }
             }
 
-            WakeLock wakeLock;
-            int index = findWakeLockIndexLocked(lock);
+            WakeLock wakeLock = mWakeLocksByToken.get(lock);
             boolean notifyAcquire;
-            if (index >= 0) {
-                wakeLock = mWakeLocks.get(index);
+            if (wakeLock != null) {
                 wakeLock.setIsBlocked(blockWakelock);
                 if (!wakeLock.hasSameProperties(flags, tag, ws, uid, pid)) {
                     // Update existing wake lock.  This shouldn't happen but is harmless.
@@ -1198,7 +1201,9 @@ public final class PowerManagerService extends SystemService
                     throw new IllegalArgumentException("Wake lock is already dead.");
                 }
                 wakeLock.setIsBlocked(blockWakelock);
+                wakeLock.mIndex = mWakeLocks.size();
                 mWakeLocks.add(wakeLock);
+                mWakeLocksByToken.put(lock, wakeLock);
                 setWakeLockDisabledStateLocked(wakeLock);
                 qcNsrmPowExt.checkPmsBlockedWakelocks(uid, pid, flags, tag, wakeLock);
                 notifyAcquire = true;
@@ -1249,8 +1254,8 @@ public final class PowerManagerService extends SystemService
 
     private void releaseWakeLockInternal(IBinder lock, int flags) {
         synchronized (mLock) {
-            int index = findWakeLockIndexLocked(lock);
-            if (index < 0) {
+            final WakeLock wakeLock = mWakeLocksByToken.get(lock);
+            if (wakeLock == null) {
                 if (DEBUG_SPEW) {
                     Slog.d(TAG, "releaseWakeLockInternal: lock=" + Objects.hashCode(lock)
                             + " [not found], flags=0x" + Integer.toHexString(flags));
@@ -1258,7 +1263,6 @@ public final class PowerManagerService extends SystemService
                 return;
             }
 
-            WakeLock wakeLock = mWakeLocks.get(index);
             if (DEBUG_SPEW) {
                 Slog.d(TAG, "releaseWakeLockInternal: lock=" + Objects.hashCode(lock)
                         + " [" + wakeLock.mTag + "], flags=0x" + Integer.toHexString(flags));
@@ -1269,7 +1273,7 @@ public final class PowerManagerService extends SystemService
             }
 
             wakeLock.mLock.unlinkToDeath(wakeLock, 0);
-            removeWakeLockLocked(wakeLock, index);
+            removeWakeLockLocked(wakeLock);
         }
     }
 
@@ -1280,17 +1284,25 @@ public final class PowerManagerService extends SystemService
                         + " [" + wakeLock.mTag + "]");
             }
 
-            int index = mWakeLocks.indexOf(wakeLock);
-            if (index < 0) {
+            if (mWakeLocksByToken.get(wakeLock.mLock) != wakeLock) {
                 return;
             }
 
-            removeWakeLockLocked(wakeLock, index);
+            removeWakeLockLocked(wakeLock);
         }
     }
 
-    private void removeWakeLockLocked(WakeLock wakeLock, int index) {
-        mWakeLocks.remove(index);
+    private void removeWakeLockLocked(WakeLock wakeLock) {
+        mWakeLocksByToken.remove(wakeLock.mLock);
+        // Move the last wake lock into the slot of the removed one, rather than shifting
+        // everything after it.
+        final int lastIndex = mWakeLocks.size() - 1;
+        final WakeLock last = mWakeLocks.remove(lastIndex);
+        if (last != wakeLock) {
+            last.mIndex = wakeLock.mIndex;
+            mWakeLocks.set(last.mIndex, last);
+        }
+        wakeLock.mIndex = -1;
         UidState state = wakeLock.mUidState;
         state.mNumWakeLocks--;
         if (state.mNumWakeLocks <= 0 &&
@@ -1317,8 +1329,8 @@ public final class PowerManagerService extends SystemService
     private void updateWakeLockWorkSourceInternal(IBinder lock, WorkSource ws, String historyTag,
             int callingUid) {
         synchronized (mLock) {
-            int index = findWakeLockIndexLocked(lock);
-            if (index < 0) {
+            final WakeLock wakeLock = mWakeLocksByToken.get(lock);
+            if (wakeLock == null) {
                 if (DEBUG_SPEW) {
                     Slog.d(TAG, "updateWakeLockWorkSourceInternal: lock=" + Objects.hashCode(lock)
                             + " [not found], ws=" + ws);
@@ -1327,7 +1339,6 @@ public final class PowerManagerService extends SystemService
                         + " from uid " + callingUid);
             }
 
-            WakeLock wakeLock = mWakeLocks.get(index);
             if (DEBUG_SPEW) {
                 Slog.d(TAG, "updateWakeLockWorkSourceInternal: lock=" + Objects.hashCode(lock)
                         + " [" + wakeLock.mTag + "], ws=" + ws);
@@ -1343,16 +1354,6 @@ public final class PowerManagerService extends SystemService
         }
     }
 
-    private int findWakeLockIndexLocked(IBinder lock) {
-        final int count = mWakeLocks.size();
-        for (int i = 0; i < count; i++) {
-            if (mWakeLocks.get(i).mLock == lock) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     protected void notifyWakeLockAcquiredLocked(WakeLock wakeLock) {
       if (mSystemReady && !wakeLock.mDisabled) {
         if (!wakeLock.isBlocked()) {
@@ -4063,6 +4064,8 @@ public final class PowerManagerService extends SystemService
         public boolean mNotifiedLong;
         public boolean mDisabled;
         private boolean mIsBlocked;
+        // Position in mWakeLocks while the wake lock is held.
+        int mIndex = -1;
 
         public WakeLock(IBinder lock, int flags, String tag, String packageName,
                 WorkSource workSource, String historyTag, int ownerUid, int ownerPid,
@@ -178,6 +178,12 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
     private boolean mTmpInitial;
     private int mMaxUiWidth;
 
+    // Windows that are laid out relative to their parent window, collected in z-order by the first
+    // layout pass so the second pass doesn't need to walk the whole hierarchy again.
+    private final ArrayList<WindowState> mTmpLayoutAttachedWindows = new ArrayList<>();
+    // Index into mTmpLayoutAttachedWindows of the first window that is below a dream window, or -1.
+    private int mTmpFirstLayoutAttachedBelowDream = -1;
+
     // Mapping from a token IBinder to a WindowToken object on this display.
     private final HashMap<IBinder, WindowToken> mTokenMap = new HashMap();
 
@@ -484,6 +490,12 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
             w -> w.mWinAnimator.prepareSurfaceLocked(true);
 
     private final Consumer<WindowState> mPerformLayout = w -> {
+        if (w.mLayoutAttached) {
+            mTmpLayoutAttachedWindows.add(w);
+        } else if (w.mAttrs.type == TYPE_DREAM && mTmpFirstLayoutAttachedBelowDream < 0) {
+            mTmpFirstLayoutAttachedBelowDream = mTmpLayoutAttachedWindows.size();
+        }
+
         // Don't do layout of a window if it is not visible, or soon won't be visible, to avoid
         // wasting time and funky changes while a window is animating away.
         final boolean gone = (mTmpWindow != null && mService.mPolicy.canBeHiddenByKeyguardLw(w))
@@ -549,34 +561,28 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
     };
 
     private final Consumer<WindowState> mPerformLayoutAttached = w -> {
-        if (w.mLayoutAttached) {
-            if (DEBUG_LAYOUT) Slog.v(TAG, "2ND PASS " + w + " mHaveFrame=" + w.mHaveFrame
-                    + " mViewVisibility=" + w.mViewVisibility
-                    + " mRelayoutCalled=" + w.mRelayoutCalled);
-            // If this view is GONE, then skip it -- keep the current frame, and let the caller
-            // know so they can ignore it if they want.  (We do the normal layout for INVISIBLE
-            // windows, since that means "perform layout as normal, just don't display").
-            if (mTmpWindow != null && mService.mPolicy.canBeHiddenByKeyguardLw(w)) {
-                return;
-            }
-            if ((w.mViewVisibility != GONE && w.mRelayoutCalled) || !w.mHaveFrame
-                    || w.mLayoutNeeded) {
-                if (mTmpInitial) {
-                    //Slog.i(TAG, "Window " + this + " clearing mContentChanged - initial");
-                    w.mContentChanged = false;
-                }
-                w.mLayoutNeeded = false;
-                w.prelayout();
-                mService.mPolicy.layoutWindowLw(w, w.getParentWindow());
-                w.mLayoutSeq = mService.mLayoutSeq;
-                if (DEBUG_LAYOUT) Slog.v(TAG, " LAYOUT: mFrame=" + w.mFrame
-                        + " mContainingFrame=" + w.mContainingFrame
-                        + " mDisplayFrame=" + w.mDisplayFrame);
+        if (DEBUG_LAYOUT) Slog.v(TAG, "2ND PASS " + w + " mHaveFrame=" + w.mHaveFrame
+                + " mViewVisibility=" + w.mViewVisibility
+                + " mRelayoutCalled=" + w.mRelayoutCalled);
+        // If this view is GONE, then skip it -- keep the current frame, and let the caller
+        // know so they can ignore it if they want.  (We do the normal layout for INVISIBLE
+        // windows, since that means "perform layout as normal, just don't display").
+        if (mTmpWindow != null && mService.mPolicy.canBeHiddenByKeyguardLw(w)) {
+            return;
+        }
+        if ((w.mViewVisibility != GONE && w.mRelayoutCalled) || !w.mHaveFrame
+                || w.mLayoutNeeded) {
+            if (mTmpInitial) {
+                //Slog.i(TAG, "Window " + this + " clearing mContentChanged - initial");
+                w.mContentChanged = false;
             }
-        } else if (w.mAttrs.type == TYPE_DREAM) {
-            // Don't layout windows behind a dream, so that if it does stuff like hide the
-            // status bar we won't get a bad transition when it goes away.
-            mTmpWindow = mTmpWindow2;
+            w.mLayoutNeeded = false;
+            w.prelayout();
+            mService.mPolicy.layoutWindowLw(w, w.getParentWindow());
+            w.mLayoutSeq = mService.mLayoutSeq;
+            if (DEBUG_LAYOUT) Slog.v(TAG, " LAYOUT: mFrame=" + w.mFrame
+                    + " mContainingFrame=" + w.mContainingFrame
+                    + " mDisplayFrame=" + w.mDisplayFrame);
         }
     };
 
@@ -2812,8 +2818,11 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
         // behind it.
         mTmpWindow = null;
         mTmpInitial = initial;
+        mTmpLayoutAttachedWindows.clear();
+        mTmpFirstLayoutAttachedBelowDream = -1;
 
-        // First perform layout of any root windows (not attached to another window).
+        // First perform layout of any root windows (not attached to another window). This also
+        // collects the attached windows in z-order for the pass below.
         forAllWindows(mPerformLayout, true /* traverseTopToBottom */);
 
         // Used to indicate that we have processed the dream window and all additional attached
@@ -2824,7 +2833,17 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
         // Now perform layout of attached windows, which usually depend on the position of the
         // window they are attached to. XXX does not deal with windows that are attached to windows
         // that are themselves attached.
-        forAllWindows(mPerformLayoutAttached, true /* traverseTopToBottom */);
+        final int attachedCount = mTmpLayoutAttachedWindows.size();
+        for (int i = 0; i < attachedCount; i++) {
+            if (i == mTmpFirstLayoutAttachedBelowDream) {
+                // Don't layout windows behind a dream, so that if it does stuff like hide the
+                // status bar we won't get a bad transition when it goes away.
+                mTmpWindow = mTmpWindow2;
+            }
+            mPerformLayoutAttached.accept(mTmpLayoutAttachedWindows.get(i));
+        }
+        mTmpLayoutAttachedWindows.clear();
+        mService.mWindowPlacerLocked.onLayoutPerformed(attachedCount);
 
         // Window frames may have changed. Tell the input dispatcher about it.
         mService.mInputMonitor.layoutInputConsumers(dw, dh);
@@ -81,6 +81,15 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
     private int mInputWindowHandleCount;
     private InputWindowHandle mFocusedInputWindowHandle;
 
+    // The window list last sent to the input dispatcher; identical lists are not sent again.
+    private final InputWindowListSnapshot mLastInputWindows = new InputWindowListSnapshot();
+    private InputWindowHandle mLastFocusedInputWindowHandle;
+
+    // Counters for dumpsys.
+    private long mInputWindowsUpdateCount;
+    private long mInputWindowsSentCount;
+    private int mMaxInputWindowHandleCount;
+
     private boolean mAddInputConsumerHandle;
     private boolean mAddPipInputConsumerHandle;
     private boolean mAddWallpaperInputConsumerHandle;
@@ -585,10 +594,36 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         mService.mInputManager.setInputDispatchMode(mInputDispatchEnabled, mInputDispatchFrozen);
     }
 
+    /**
+     * Sends the collected input windows to the input dispatcher, unless they are identical to
+     * what it was last sent. The dispatcher re-reads every handle on each update, so resending an
+     * unchanged list only costs time.
+     */
+    private void sendInputWindowsLw() {
+        mInputWindowsUpdateCount++;
+        if (mInputWindowHandleCount > mMaxInputWindowHandleCount) {
+            mMaxInputWindowHandleCount = mInputWindowHandleCount;
+        }
+        if (mFocusedInputWindowHandle == mLastFocusedInputWindowHandle
+                && mLastInputWindows.matches(mInputWindowHandles, mInputWindowHandleCount)) {
+            if (DEBUG_INPUT) Slog.d(TAG_WM, "Input windows unchanged, not sending "
+                    + mInputWindowHandleCount + " handles");
+            return;
+        }
+        mInputWindowsSentCount++;
+        mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
+        mLastInputWindows.set(mInputWindowHandles, mInputWindowHandleCount);
+        mLastFocusedInputWindowHandle = mFocusedInputWindowHandle;
+    }
+
     void dump(PrintWriter pw, String prefix) {
         if (mInputFreezeReason != null) {
             pw.println(prefix + "mInputFreezeReason=" + mInputFreezeReason);
         }
+        pw.println(prefix + "mInputWindowsUpdateCount=" + mInputWindowsUpdateCount
+                + " mInputWindowsSentCount=" + mInputWindowsSentCount
+                + " lastSize=" + mLastInputWindows.size()
+                + " maxSize=" + mMaxInputWindowHandleCount);
         final Set<String> inputConsumerKeys = mInputConsumers.keySet();
         if (!inputConsumerKeys.isEmpty()) {
             pw.println(prefix + "InputConsumers:");
@@ -629,7 +664,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
             }
 
             // Send windows to native code.
-            mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
+            sendInputWindowsLw();
 
             clearInputWindowHandlesLw();
         }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm;
+
+import android.graphics.Region;
+import android.view.InputChannel;
+
+import com.android.server.input.InputApplicationHandle;
+import com.android.server.input.InputWindowHandle;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Copy of the input window list that was last sent to the input dispatcher.
+ *
+ * {@link InputWindowHandle}s are reused and updated in place by {@link InputMonitor}, so this
+ * keeps the values the native side reads from each handle in order to tell whether a newly
+ * computed list differs from the one the dispatcher already has.
+ */
+class InputWindowListSnapshot {
+
+    private HandleState[] mStates = new HandleState[0];
+    private int mCount;
+
+    /**
+     * @return {@code true} if the first {@code count} entries of {@code handles} are the same
+     *         handles, in the same order and with the same values, as the ones last recorded
+     *         with {@link #set}.
+     */
+    boolean matches(InputWindowHandle[] handles, int count) {
+        if (count != mCount) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!mStates[i].matches(handles[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records the first {@code count} entries of {@code handles}. */
+    void set(InputWindowHandle[] handles, int count) {
+        if (mStates.length < count) {
+            final int oldLength = mStates.length;
+            mStates = Arrays.copyOf(mStates, Math.max(count, oldLength * 2));
+            for (int i = oldLength; i < mStates.length; i++) {
+                mStates[i] = new HandleState();
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mStates[i].set(handles[i]);
+        }
+        // Don't keep removed windows alive through the snapshot.
+        for (int i = count; i < mCount; i++) {
+            mStates[i].clear();
+        }
+        mCount = count;
+    }
+
+    /** Forgets the recorded list so the next comparison fails. */
+    void clear() {
+        set(null, 0);
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    private static final class HandleState {
+        InputWindowHandle handle;
+        InputChannel inputChannel;
+        InputApplicationHandle inputApplicationHandle;
+        String applicationName;
+        long applicationDispatchingTimeoutNanos;
+        String name;
+        int layoutParamsFlags;
+        int layoutParamsType;
+        long dispatchingTimeoutNanos;
+        int frameLeft;
+        int frameTop;
+        int frameRight;
+        int frameBottom;
+        float scaleFactor;
+        final Region touchableRegion = new Region();
+        boolean visible;
+        boolean canReceiveKeys;
+        boolean hasFocus;
+        boolean hasWallpaper;
+        boolean paused;
+        int layer;
+        int ownerPid;
+        int ownerUid;
+        int inputFeatures;
+
+        boolean matches(InputWindowHandle h) {
+            final InputApplicationHandle app = h.inputApplicationHandle;
+            return handle == h
+                    && inputChannel == h.inputChannel
+                    && inputApplicationHandle == app
+                    && (app == null || (Objects.equals(applicationName, app.name)
+                            && applicationDispatchingTimeoutNanos == app.dispatchingTimeoutNanos))
+                    && Objects.equals(name, h.name)
+                    && layoutParamsFlags == h.layoutParamsFlags
+                    && layoutParamsType == h.layoutParamsType
+                    && dispatchingTimeoutNanos == h.dispatchingTimeoutNanos
+                    && frameLeft == h.frameLeft
+                    && frameTop == h.frameTop
+                    && frameRight == h.frameRight
+                    && frameBottom == h.frameBottom
+                    && scaleFactor == h.scaleFactor
+                    && visible == h.visible
+                    && canReceiveKeys == h.canReceiveKeys
+                    && hasFocus == h.hasFocus
+                    && hasWallpaper == h.hasWallpaper
+                    && paused == h.paused
+                    && layer == h.layer
+                    && ownerPid == h.ownerPid
+                    && ownerUid == h.ownerUid
+                    && inputFeatures == h.inputFeatures
+                    && touchableRegion.equals(h.touchableRegion);
+        }
+
+        void set(InputWindowHandle h) {
+            final InputApplicationHandle app = h.inputApplicationHandle;
+            handle = h;
+            inputChannel = h.inputChannel;
+            inputApplicationHandle = app;
+            applicationName = app != null ? app.name : null;
+            applicationDispatchingTimeoutNanos = app != null ? app.dispatchingTimeoutNanos : 0;
+            name = h.name;
+            layoutParamsFlags = h.layoutParamsFlags;
+            layoutParamsType = h.layoutParamsType;
+            dispatchingTimeoutNanos = h.dispatchingTimeoutNanos;
+            frameLeft = h.frameLeft;
+            frameTop = h.frameTop;
+            frameRight = h.frameRight;
+            frameBottom = h.frameBottom;
+            scaleFactor = h.scaleFactor;
+            touchableRegion.set(h.touchableRegion);
+            visible = h.visible;
+            canReceiveKeys = h.canReceiveKeys;
+            hasFocus = h.hasFocus;
+            hasWallpaper = h.hasWallpaper;
+            paused = h.paused;
+            layer = h.layer;
+            ownerPid = h.ownerPid;
+            ownerUid = h.ownerUid;
+            inputFeatures = h.inputFeatures;
+        }
+
+        void clear() {
+            handle = null;
+            inputChannel = null;
+            inputApplicationHandle = null;
+            applicationName = null;
+            name = null;
+            touchableRegion.setEmpty();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import android.os.Process;
 import android.os.SystemClock;
 import android.util.ArraySet;
 import android.util.Slog;
+import android.util.SparseLongArray;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
@@ -38,6 +39,7 @@ import com.android.server.wm.nano.WindowManagerProtos.TaskSnapshotProto;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 
@@ -70,6 +72,24 @@ class TaskSnapshotPersister {
     private final Object mLock = new Object();
     private final DirectoryResolver mDirectoryResolver;
 
+    /**
+     * Hash of the pixels last written for each task. Only accessed on the persister thread.
+     */
+    private final SparseLongArray mPersistedHashes = new SparseLongArray();
+
+    @GuardedBy("mLock")
+    private int mMaxQueueDepth;
+    @GuardedBy("mLock")
+    private int mPurgedCount;
+    @GuardedBy("mLock")
+    private int mWriteCount;
+    @GuardedBy("mLock")
+    private int mUnchangedCount;
+    @GuardedBy("mLock")
+    private long mEncodeTimeMs;
+    @GuardedBy("mLock")
+    private long mBytesWritten;
+
     /**
      * The list of ids of the tasks that have been persisted since {@link #removeObsoleteFiles} was
      * called.
@@ -159,6 +179,7 @@ class TaskSnapshotPersister {
         mWriteQueue.offer(item);
         item.onQueuedLocked();
         ensureStoreQueueDepthLocked();
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, mWriteQueue.size());
         if (!mPaused) {
             mLock.notifyAll();
         }
@@ -169,6 +190,7 @@ class TaskSnapshotPersister {
         while (mStoreQueueItems.size() > MAX_STORE_QUEUE_DEPTH) {
             final StoreWriteQueueItem item = mStoreQueueItems.poll();
             mWriteQueue.remove(item);
+            mPurgedCount++;
             Slog.i(TAG, "Queue is too deep! Purged item with taskid=" + item.mTaskId);
         }
     }
@@ -201,6 +223,35 @@ class TaskSnapshotPersister {
         protoFile.delete();
         bitmapFile.delete();
         bitmapReducedFile.delete();
+        mPersistedHashes.delete(taskId);
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        synchronized (mLock) {
+            pw.println(prefix + "SnapshotPersister");
+            final String doublePrefix = prefix + "  ";
+            pw.println(doublePrefix + "queueDepth=" + mWriteQueue.size()
+                    + " maxQueueDepth=" + mMaxQueueDepth + " purged=" + mPurgedCount);
+            pw.println(doublePrefix + "written=" + mWriteCount + " unchanged=" + mUnchangedCount
+                    + " encodeTimeMs=" + mEncodeTimeMs + " bytesWritten=" + mBytesWritten);
+        }
+    }
+
+    /**
+     * Computes a hash of the pixels of {@param bitmap}, one row at a time.
+     */
+    private static long hashPixels(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int[] row = new int[width];
+        long hash = 0xcbf29ce484222325L ^ (((long) width << 32) | height);
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ row[x]) * 0x100000001b3L;
+            }
+        }
+        return hash;
     }
 
     interface DirectoryResolver {
@@ -326,6 +377,21 @@ class TaskSnapshotPersister {
             final File reducedFile = getReducedResolutionBitmapFile(mTaskId, mUserId);
             final Bitmap bitmap = Bitmap.createHardwareBitmap(mSnapshot.getSnapshot());
             final Bitmap swBitmap = bitmap.copy(Config.ARGB_8888, false /* isMutable */);
+
+            // Task snapshots are often retaken while the content of the task doesn't change,
+            // in which case there is no need to encode the same pixels again.
+            final long hash = hashPixels(swBitmap);
+            if (mPersistedHashes.indexOfKey(mTaskId) >= 0
+                    && mPersistedHashes.get(mTaskId) == hash
+                    && file.exists() && reducedFile.exists()) {
+                synchronized (mLock) {
+                    mUnchangedCount++;
+                }
+                return true;
+            }
+            mPersistedHashes.delete(mTaskId);
+
+            final long start = SystemClock.elapsedRealtime();
             final Bitmap reduced = Bitmap.createScaledBitmap(swBitmap,
                     (int) (bitmap.getWidth() * REDUCED_SCALE),
                     (int) (bitmap.getHeight() * REDUCED_SCALE), true /* filter */);
@@ -340,6 +406,12 @@ class TaskSnapshotPersister {
                 Slog.e(TAG, "Unable to open " + file + " or " + reducedFile +" for persisting.", e);
                 return false;
             }
+            mPersistedHashes.put(mTaskId, hash);
+            synchronized (mLock) {
+                mWriteCount++;
+                mEncodeTimeMs += SystemClock.elapsedRealtime() - start;
+                mBytesWritten += file.length() + reducedFile.length();
+            }
             return true;
         }
     }
@@ -89,6 +89,12 @@ class WindowSurfacePlacer {
     private boolean mTraversalScheduled;
     private int mDeferDepth = 0;
 
+    // Counters for dumpsys; how often we placed surfaces and laid out displays, and how many
+    // windows the attached-window layout pass had to visit.
+    private long mPlacementCount;
+    private long mLayoutCount;
+    private long mLayoutAttachedWindowCount;
+
     private static final class LayerAndToken {
         public int layer;
         public AppWindowToken token;
@@ -190,6 +196,7 @@ class WindowSurfacePlacer {
         }
 
         try {
+            mPlacementCount++;
             mService.mRoot.performSurfacePlacement(recoveringMemory);
 
             mInLayout = false;
@@ -228,6 +235,16 @@ class WindowSurfacePlacer {
         return mInLayout;
     }
 
+    /**
+     * Called by {@link DisplayContent#performLayout} after a display was laid out.
+     *
+     * @param layoutAttachedWindows Number of windows laid out relative to their parent window.
+     */
+    void onLayoutPerformed(int layoutAttachedWindows) {
+        mLayoutCount++;
+        mLayoutAttachedWindowCount += layoutAttachedWindows;
+    }
+
     /**
      * @return bitmap indicating if another pass through layout must be made.
      */
@@ -782,5 +799,8 @@ class WindowSurfacePlacer {
         pw.println(prefix + "mTraversalScheduled=" + mTraversalScheduled);
         pw.println(prefix + "mHoldScreenWindow=" + mService.mRoot.mHoldScreenWindow);
         pw.println(prefix + "mObscuringWindow=" + mService.mRoot.mObscuringWindow);
+        pw.println(prefix + "mPlacementCount=" + mPlacementCount
+                + " mLayoutCount=" + mLayoutCount
+                + " mLayoutAttachedWindowCount=" + mLayoutAttachedWindowCount);
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.notification;
+
+import static junit.framework.Assert.assertEquals;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.service.notification.NotificationRankingUpdate;
+import android.service.notification.StatusBarNotification;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.testing.AndroidTestingRunner;
+import android.testing.TestableLooper;
+import android.testing.TestableLooper.RunWithLooper;
+
+import com.android.server.notification.ManagedServices.ManagedServiceInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@SmallTest
+@RunWith(AndroidTestingRunner.class)
+@RunWithLooper
+public class ListenerDeliveryQueueTest extends NotificationTestCase {
+    private static final int MAX_DEPTH = 5;
+
+    @Mock ListenerDeliveryQueue.Callback mCallback;
+    @Mock ManagedServiceInfo mInfo;
+    @Mock NotificationRankingUpdate mUpdate;
+
+    private TestableLooper mTestableLooper;
+    private ListenerDeliveryQueue mQueue;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mTestableLooper = TestableLooper.get(this);
+        mQueue = new ListenerDeliveryQueue(mInfo, new Handler(mTestableLooper.getLooper()),
+                mCallback, 0, MAX_DEPTH);
+    }
+
+    private StatusBarNotification sbn(String key) {
+        final StatusBarNotification sbn = mock(StatusBarNotification.class);
+        when(sbn.getKey()).thenReturn(key);
+        return sbn;
+    }
+
+    @Test
+    public void testSuccessivePostsAreCoalesced() throws Exception {
+        final StatusBarNotification first = sbn("a");
+        final StatusBarNotification second = sbn("a");
+        mQueue.enqueuePosted(first, mUpdate);
+        mQueue.enqueuePosted(second, mUpdate);
+        assertEquals(1, mQueue.getDepth());
+
+        mTestableLooper.processAllMessages();
+
+        verify(mCallback, never()).deliverPosted(mInfo, first, mUpdate);
+        verify(mCallback, times(1)).deliverPosted(mInfo, second, mUpdate);
+        assertEquals(1, mQueue.getCoalescedCount());
+        assertEquals(0, mQueue.getDepth());
+    }
+
+    @Test
+    public void testRemovalReplacesPendingPost() throws Exception {
+        final StatusBarNotification posted = sbn("a");
+        final StatusBarNotification removed = sbn("a");
+        mQueue.enqueuePosted(posted, mUpdate);
+        mQueue.enqueueRemoved(removed, mUpdate, 3);
+
+        mTestableLooper.processAllMessages();
+
+        verify(mCallback, never()).deliverPosted(any(), any(), any());
+        verify(mCallback, times(1)).deliverRemoved(mInfo, removed, mUpdate, 3);
+        assertEquals(1, mQueue.getDroppedCount());
+    }
+
+    @Test
+    public void testDifferentKeysDeliveredInOrder() throws Exception {
+        final StatusBarNotification a = sbn("a");
+        final StatusBarNotification b = sbn("b");
+        mQueue.enqueuePosted(a, mUpdate);
+        mQueue.enqueuePosted(b, mUpdate);
+        mQueue.enqueueRankingUpdate(mUpdate);
+
+        mTestableLooper.processAllMessages();
+
+        InOrder order = inOrder(mCallback);
+        order.verify(mCallback).deliverPosted(mInfo, a, mUpdate);
+        order.verify(mCallback).deliverPosted(mInfo, b, mUpdate);
+        order.verify(mCallback).deliverRankingUpdate(mInfo, mUpdate);
+    }
+
+    @Test
+    public void testPendingRankingUpdateSupersededByPost() throws Exception {
+        mQueue.enqueueRankingUpdate(mUpdate);
+        mQueue.enqueuePosted(sbn("a"), mUpdate);
+
+        mTestableLooper.processAllMessages();
+
+        verify(mCallback, never()).deliverRankingUpdate(any(), any());
+        verify(mCallback, times(1)).deliverPosted(eq(mInfo), any(), eq(mUpdate));
+    }
+
+    @Test
+    public void testWindowHoldsBackDelivery() throws Exception {
+        mQueue.setWindow(1000, MAX_DEPTH);
+        mQueue.enqueuePosted(sbn("a"), mUpdate);
+
+        mTestableLooper.processAllMessages();
+        verify(mCallback, never()).deliverPosted(any(), any(), any());
+
+        assertEquals(1, mQueue.getDepth());
+
+        mQueue.flush();
+        verify(mCallback, times(1)).deliverPosted(eq(mInfo), any(), eq(mUpdate));
+    }
+
+    @Test
+    public void testFullQueueIsFlushedImmediately() throws Exception {
+        mQueue.setWindow(1000, MAX_DEPTH);
+        for (int i = 0; i < MAX_DEPTH; i++) {
+            mQueue.enqueuePosted(sbn("key" + i), mUpdate);
+        }
+
+        mTestableLooper.processAllMessages();
+
+        verify(mCallback, times(MAX_DEPTH)).deliverPosted(eq(mInfo), any(), eq(mUpdate));
+        assertEquals(0, mQueue.getDepth());
+    }
+
+    @Test
+    public void testClearDropsPending() throws Exception {
+        mQueue.enqueuePosted(sbn("a"), mUpdate);
+        mQueue.clear();
+
+        mTestableLooper.processAllMessages();
+
+        verify(mCallback, never()).deliverPosted(any(), any(), any());
+        verify(mCallback, never()).deliverRemoved(any(), any(), any(), anyInt());
+        assertEquals(1, mQueue.getDroppedCount());
+    }
+}
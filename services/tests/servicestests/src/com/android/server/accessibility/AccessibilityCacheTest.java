@@ -287,6 +287,37 @@ public class AccessibilityCacheTest {
         assertEventTypeClearsNode(AccessibilityEvent.TYPE_WINDOWS_CHANGED);
     }
 
+    @Test
+    public void windowStateChangeEventWithWindow_onlyClearsNodesOfThatWindow() {
+        AccessibilityNodeInfo nodeInfo1 = getNodeWithA11yAndWindowId(SINGLE_VIEW_ID, WINDOW_ID_1);
+        AccessibilityNodeInfo nodeInfo2 = getNodeWithA11yAndWindowId(SINGLE_VIEW_ID, WINDOW_ID_2);
+        long id = nodeInfo1.getSourceNodeId();
+        mAccessibilityCache.add(nodeInfo1);
+        mAccessibilityCache.add(nodeInfo2);
+        nodeInfo1.recycle();
+        nodeInfo2.recycle();
+
+        AccessibilityEvent event =
+                AccessibilityEvent.obtain(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
+        event.setSource(getMockViewWithA11yAndWindowIds(OTHER_VIEW_ID, WINDOW_ID_2));
+        mAccessibilityCache.onAccessibilityEvent(event);
+        event.recycle();
+
+        AccessibilityNodeInfo node1FromCache = mAccessibilityCache.getNode(WINDOW_ID_1, id);
+        AccessibilityNodeInfo node2FromCache = mAccessibilityCache.getNode(WINDOW_ID_2, id);
+        try {
+            assertNotNull(node1FromCache);
+            assertNull(node2FromCache);
+        } finally {
+            if (node1FromCache != null) {
+                node1FromCache.recycle();
+            }
+            if (node2FromCache != null) {
+                node2FromCache.recycle();
+            }
+        }
+    }
+
     @Test
     public void subTreeChangeEvent_clearsNodeAndChild() {
         AccessibilityEvent event = AccessibilityEvent
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.accessibility;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.android.server.accessibility.AccessibilityManagerService.PendingContentChangedEvent;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Tests of the coalescing of the window content changed events pending for a service with a
+ * notification timeout.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AccessibilityManagerServiceTest {
+    private static final int WINDOW_ID = 1;
+    private static final int OTHER_WINDOW_ID = 2;
+    private static final int VIEW_ID = 10;
+    private static final int OTHER_VIEW_ID = 11;
+
+    private final ArrayList<PendingContentChangedEvent> mPendingEvents = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (PendingContentChangedEvent pending : mPendingEvents) {
+            pending.mEvent.recycle();
+        }
+    }
+
+    @Test
+    public void coalesce_sameSource_replacesPendingEventInPlace() {
+        final PendingContentChangedEvent pending = addPendingEvent(WINDOW_ID, VIEW_ID,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+        final AccessibilityEvent oldEvent = pending.mEvent;
+        final AccessibilityEvent event = newEvent(WINDOW_ID, VIEW_ID,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION);
+
+        assertTrue(AccessibilityManagerService.coalesceContentChangedEvent(mPendingEvents, event));
+
+        // The holder, which the message already queued for the old event refers to, is kept, so
+        // the new event is delivered when the old one would have been.
+        assertEquals(1, mPendingEvents.size());
+        assertSame(pending, mPendingEvents.get(0));
+        assertSame(event, pending.mEvent);
+        assertEquals(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT
+                | AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION,
+                event.getContentChangeTypes());
+        // Recycling clears the event.
+        assertEquals(0, oldEvent.getEventType());
+    }
+
+    @Test
+    public void coalesce_otherSource_isNotCoalesced() {
+        addPendingEvent(WINDOW_ID, VIEW_ID, AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+        final AccessibilityEvent otherView = newEvent(WINDOW_ID, OTHER_VIEW_ID,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+        final AccessibilityEvent otherWindow = newEvent(OTHER_WINDOW_ID, VIEW_ID,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+
+        try {
+            assertFalse(AccessibilityManagerService.coalesceContentChangedEvent(
+                    mPendingEvents, otherView));
+            assertFalse(AccessibilityManagerService.coalesceContentChangedEvent(
+                    mPendingEvents, otherWindow));
+            assertEquals(1, mPendingEvents.size());
+            assertEquals(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                    mPendingEvents.get(0).mEvent.getEventType());
+        } finally {
+            otherView.recycle();
+            otherWindow.recycle();
+        }
+    }
+
+    @Test
+    public void coalesce_subtreeAndUndefined_keepsSubtree() {
+        assertMergedTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
+        assertMergedTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
+    }
+
+    @Test
+    public void coalesce_subtreeAndText_keepsBoth() {
+        assertMergedTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE
+                        | AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT);
+    }
+
+    @Test
+    public void coalesce_undefinedAndText_isUndefined() {
+        assertMergedTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED,
+                AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED);
+    }
+
+    private void assertMergedTypes(int oldTypes, int newTypes, int expectedTypes) {
+        final PendingContentChangedEvent pending = addPendingEvent(WINDOW_ID, VIEW_ID, oldTypes);
+        final AccessibilityEvent event = newEvent(WINDOW_ID, VIEW_ID, newTypes);
+
+        assertTrue(AccessibilityManagerService.coalesceContentChangedEvent(mPendingEvents, event));
+
+        assertEquals(expectedTypes, pending.mEvent.getContentChangeTypes());
+        pending.mEvent.recycle();
+        mPendingEvents.clear();
+    }
+
+    private PendingContentChangedEvent addPendingEvent(int windowId, int viewId, int types) {
+        final PendingContentChangedEvent pending =
+                new PendingContentChangedEvent(newEvent(windowId, viewId, types));
+        mPendingEvents.add(pending);
+        return pending;
+    }
+
+    private static AccessibilityEvent newEvent(int windowId, int viewId, int types) {
+        final AccessibilityEvent event =
+                AccessibilityEvent.obtain(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        final AccessibilityNodeInfo source = AccessibilityNodeInfo.obtain();
+        source.setSourceNodeId(AccessibilityNodeInfo.makeNodeId(viewId,
+                AccessibilityNodeInfo.UNDEFINED_ITEM_ID), windowId);
+        event.setSource(source);
+        source.recycle();
+        event.setContentChangeTypes(types);
+        return event;
+    }
+}
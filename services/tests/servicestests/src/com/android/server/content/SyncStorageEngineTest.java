@@ -37,6 +37,7 @@ import com.android.server.content.SyncStorageEngine.EndPoint;
 
 import com.android.internal.os.AtomicFile;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.util.List;
@@ -167,6 +168,26 @@ public class SyncStorageEngineTest extends AndroidTestCase {
 
     }
 
+    @MediumTest
+    public void testCorruptStatusJournal() throws Exception {
+        MockContentResolver mockResolver = new MockContentResolver();
+        final TestContext testContext = new TestContext(mockResolver, getContext());
+
+        File syncDir = getSyncDir();
+        syncDir.mkdirs();
+        File journalFile = new File(syncDir, "status-journal.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile))) {
+            // A record claiming to be 2GB long.
+            out.writeInt(Integer.MAX_VALUE);
+            out.writeInt(0);
+        }
+
+        // Must neither throw nor keep the bad record for later appends.
+        SyncStorageEngine.newTestInstance(testContext);
+
+        assertTrue(!journalFile.exists() || journalFile.length() == 0);
+    }
+
     @MediumTest
     public void testAuthorityRenaming() throws Exception {
         final Account account1 = new Account("acc1", "type1");
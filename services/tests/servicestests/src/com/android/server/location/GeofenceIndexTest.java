@@ -0,0 +1,146 @@
+package com.android.server.location;
+
+import android.location.Geofence;
+import android.location.Location;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Unit tests for {@link GeofenceIndex}.
+ */
+public class GeofenceIndexTest extends AndroidTestCase {
+    private GeofenceIndex mIndex;
+
+    @Override
+    public void setUp() {
+        mIndex = new GeofenceIndex();
+    }
+
+    private static GeofenceState createFence(double latitude, double longitude, float radius) {
+        return new GeofenceState(Geofence.createCircle(latitude, longitude, radius),
+                Long.MAX_VALUE, 0, 0, "package", null);
+    }
+
+    private static Location createLocation(double latitude, double longitude) {
+        Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+
+    /**
+     * Tests that nearby fences share a cell and far away fences don't.
+     */
+    public void testAddAndRemove() {
+        GeofenceState first = createFence(37.4220, -122.0841, 100);
+        GeofenceState second = createFence(37.4221, -122.0842, 50);
+        GeofenceState far = createFence(48.8584, 2.2945, 100);
+        mIndex.add(first);
+        mIndex.add(second);
+        mIndex.add(far);
+        assertEquals(3, mIndex.size());
+        assertEquals(2, mIndex.getCellCount());
+
+        mIndex.remove(first);
+        assertEquals(2, mIndex.size());
+        assertEquals(2, mIndex.getCellCount());
+        mIndex.remove(second);
+        assertEquals(1, mIndex.getCellCount());
+
+        // Removing a fence that isn't indexed is a no-op.
+        mIndex.remove(first);
+        assertEquals(1, mIndex.size());
+    }
+
+    /**
+     * Tests that cells are sorted nearest first and that their distances are lower bounds.
+     */
+    public void testSortCells() {
+        GeofenceState near = createFence(37.4220, -122.0841, 100);
+        GeofenceState middle = createFence(37.7749, -122.4194, 100);
+        GeofenceState far = createFence(48.8584, 2.2945, 100);
+        mIndex.add(far);
+        mIndex.add(near);
+        mIndex.add(middle);
+
+        Location location = createLocation(37.4000, -122.1000);
+        ArrayList<GeofenceIndex.Cell> cells = mIndex.sortCells(location);
+        assertEquals(3, cells.size());
+        assertSame(near, cells.get(0).mFences.get(0));
+        assertSame(middle, cells.get(1).mFences.get(0));
+        assertSame(far, cells.get(2).mFences.get(0));
+
+        for (GeofenceIndex.Cell cell : cells) {
+            GeofenceState state = cell.mFences.get(0);
+            state.processLocation(location);
+            assertTrue(cell.getBoundaryDistance() <= state.getDistanceToBoundary());
+
+            final double roughDistance = cell.mDistance;
+            mIndex.refineDistance(cell, location);
+            assertTrue(cell.mDistance >= roughDistance);
+            assertTrue(cell.getBoundaryDistance() <= state.getDistanceToBoundary());
+        }
+    }
+
+    /**
+     * Tests that the distance bounds hold across the antimeridian and near the poles.
+     */
+    public void testSortCells_edges() {
+        GeofenceState east = createFence(10, 179.99, 100);
+        GeofenceState north = createFence(89.99, 45, 100);
+        mIndex.add(east);
+        mIndex.add(north);
+
+        for (Location location : new Location[] {
+                createLocation(10, -179.99), createLocation(89.99, -135) }) {
+            for (GeofenceIndex.Cell cell : mIndex.sortCells(location)) {
+                GeofenceState state = cell.mFences.get(0);
+                state.processLocation(location);
+                assertTrue(cell.getBoundaryDistance() <= state.getDistanceToBoundary());
+            }
+        }
+    }
+
+    /**
+     * Tests that the unresolved count follows the state of the fences.
+     */
+    public void testUnresolved() {
+        GeofenceState inside = createFence(37.4220, -122.0841, 1000);
+        GeofenceState outside = createFence(37.4300, -122.0841, 100);
+        mIndex.add(inside);
+        mIndex.add(outside);
+        GeofenceIndex.Cell cell = mIndex.sortCells(createLocation(37.4220, -122.0841)).get(0);
+        assertEquals(2, cell.mUnresolved);
+
+        Location location = createLocation(37.4220, -122.0841);
+        inside.processLocation(location);
+        outside.processLocation(location);
+        cell.updateUnresolved();
+        assertEquals(1, cell.mUnresolved);
+
+        mIndex.remove(inside);
+        assertEquals(0, cell.mUnresolved);
+    }
+
+    /**
+     * Tests that fences of apps that aren't allowed to use them only count as unresolved while
+     * the location was last inside of them.
+     */
+    public void testUnresolved_denied() {
+        GeofenceState unknown = createFence(37.4220, -122.0841, 100);
+        GeofenceState inside = createFence(37.4221, -122.0841, 100);
+        mIndex.add(unknown);
+        mIndex.add(inside);
+        inside.processLocation(createLocation(37.4221, -122.0841));
+        GeofenceIndex.Cell cell = mIndex.sortCells(createLocation(37.4220, -122.0841)).get(0);
+
+        unknown.mDenied = true;
+        inside.mDenied = true;
+        cell.updateUnresolved();
+        assertEquals(1, cell.mUnresolved);
+
+        mIndex.remove(inside);
+        assertEquals(0, cell.mUnresolved);
+    }
+}
@@ -20,10 +20,12 @@ import static android.app.ActivityManager.StackId.PINNED_STACK_ID;
 import static android.view.Display.DEFAULT_DISPLAY;
 import static android.view.WindowManager.LayoutParams.TYPE_APPLICATION;
 import static android.view.WindowManager.LayoutParams.TYPE_APPLICATION_ATTACHED_DIALOG;
+import static android.view.WindowManager.LayoutParams.TYPE_APPLICATION_PANEL;
 import static android.view.WindowManager.LayoutParams.TYPE_BASE_APPLICATION;
 import static android.view.WindowManager.LayoutParams.TYPE_VOICE_INTERACTION;
 import static com.android.server.wm.WindowContainer.POSITION_TOP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Ignore;
@@ -72,6 +74,22 @@ public class DisplayContentTests extends WindowTestsBase {
                 mImeDialogWindow));
     }
 
+    @Test
+    public void testPerformLayout_LaysOutAttachedWindows() throws Exception {
+        final WindowState panel = createWindow(mAppWindow, TYPE_APPLICATION_PANEL, "panel");
+        assertTrue(panel.mLayoutAttached);
+        assertFalse(mChildAppWindowAbove.mLayoutAttached);
+
+        synchronized (sWm.mWindowMap) {
+            mDisplayContent.setLayoutNeeded();
+            mDisplayContent.performLayout(true /* initial */, false /* updateInputWindows */);
+        }
+
+        // The panel doesn't have a frame yet, so the attached pass must have laid it out.
+        assertEquals(sWm.mLayoutSeq, panel.mLayoutSeq);
+        assertEquals(sWm.mLayoutSeq, mAppWindow.mLayoutSeq);
+    }
+
     @Test
     public void testForAllWindows_WithAppImeTarget() throws Exception {
         final WindowState imeAppTarget =
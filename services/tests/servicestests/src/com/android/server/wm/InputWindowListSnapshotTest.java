@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.wm;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.platform.test.annotations.Presubmit;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.server.input.InputWindowHandle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test class for {@link InputWindowListSnapshot}.
+ *
+ * runtest frameworks-services -c com.android.server.wm.InputWindowListSnapshotTest
+ */
+@SmallTest
+@Presubmit
+@RunWith(AndroidJUnit4.class)
+public class InputWindowListSnapshotTest {
+
+    private InputWindowListSnapshot mSnapshot;
+    private InputWindowHandle[] mHandles;
+
+    @Before
+    public void setUp() throws Exception {
+        mSnapshot = new InputWindowListSnapshot();
+        mHandles = new InputWindowHandle[] {
+                createHandle("first", 1), createHandle("second", 2), null };
+    }
+
+    private static InputWindowHandle createHandle(String name, int layer) {
+        final InputWindowHandle handle = new InputWindowHandle(null, null, null, 0);
+        handle.name = name;
+        handle.layer = layer;
+        handle.frameRight = 100;
+        handle.frameBottom = 100;
+        handle.touchableRegion.set(0, 0, 100, 100);
+        return handle;
+    }
+
+    @Test
+    public void testEmptySnapshotOnlyMatchesEmptyList() throws Exception {
+        assertTrue(mSnapshot.matches(mHandles, 0));
+        assertFalse(mSnapshot.matches(mHandles, 2));
+    }
+
+    @Test
+    public void testUnchangedListMatches() throws Exception {
+        mSnapshot.set(mHandles, 2);
+        assertEquals(2, mSnapshot.size());
+        assertTrue(mSnapshot.matches(mHandles, 2));
+    }
+
+    @Test
+    public void testInPlaceChangeDoesNotMatch() throws Exception {
+        mSnapshot.set(mHandles, 2);
+
+        mHandles[1].touchableRegion.set(0, 0, 50, 50);
+        assertFalse(mSnapshot.matches(mHandles, 2));
+
+        mSnapshot.set(mHandles, 2);
+        mHandles[0].visible = true;
+        assertFalse(mSnapshot.matches(mHandles, 2));
+    }
+
+    @Test
+    public void testReorderDoesNotMatch() throws Exception {
+        mSnapshot.set(mHandles, 2);
+
+        final InputWindowHandle first = mHandles[0];
+        mHandles[0] = mHandles[1];
+        mHandles[1] = first;
+        assertFalse(mSnapshot.matches(mHandles, 2));
+    }
+
+    @Test
+    public void testRemovalDoesNotMatch() throws Exception {
+        mSnapshot.set(mHandles, 2);
+        assertFalse(mSnapshot.matches(mHandles, 1));
+
+        mSnapshot.clear();
+        assertEquals(0, mSnapshot.size());
+        assertFalse(mSnapshot.matches(mHandles, 2));
+    }
+}
@@ -66,6 +66,24 @@ public class TaskSnapshotPersisterLoaderTest extends TaskSnapshotPersisterTestBa
         assertEquals(Configuration.ORIENTATION_PORTRAIT, snapshot.getOrientation());
     }
 
+    @Test
+    public void testUnchangedSnapshotNotRewritten() {
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mPersister.waitForQueueEmpty();
+        final File bitmapFile = new File(sFilesDir.getPath() + "/snapshots/1.jpg");
+        assertTrue(bitmapFile.setLastModified(0));
+
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mPersister.waitForQueueEmpty();
+        assertEquals(0, bitmapFile.lastModified());
+
+        // The snapshot is written again once its files are gone.
+        bitmapFile.delete();
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mPersister.waitForQueueEmpty();
+        assertTrue(bitmapFile.exists());
+    }
+
     private void assertTrueForFiles(File[] files, Predicate<File> predicate, String message) {
         for (File file : files) {
             assertTrue(file.getName() + message, predicate.apply(file));